@@ -3,15 +3,10 @@ package ai2020.group17;
 import geniusweb.actions.PartyId;
 import geniusweb.issuevalue.*;
 import geniusweb.profile.utilityspace.LinearAdditive;
-import geniusweb.profile.utilityspace.ValueSetUtilities;
-import tudelft.utilities.immutablelist.Tuple;
 
-import java.math.BigDecimal;
 import java.util.*;
 import java.util.stream.Collectors;
-
-import static ai2020.group17.Helper.distance;
-import static ai2020.group17.Helper.drawFromDiscreteDist;
+import java.util.stream.IntStream;
 
 public class BidGeneration {
 
@@ -19,154 +14,308 @@ public class BidGeneration {
     private Map<PartyId, Integer> powers;
     private int minOpponentPower;
 
+    // Everything of the bid generation that only depends on our profile
+    private DrawPlan drawPlan;
+
+    // Tracks the distances of the opponents to select the target parties
+    private CoalitionTracker coalitionTracker;
+
+    // Source of randomness for drawing the values
+    private Sampler sampler;
+
+    // Generator on int[] bids, null if bids are generated on geniusweb objects
+    private PrimitiveBidGenerator primitiveGenerator;
+
     public BidGeneration(LinearAdditive myProfile, Map<PartyId, Integer> powers, int minOpponentPower) {
+        this(myProfile, powers, minOpponentPower, UtilityOfferStringToIntOptionsMapper.forDomain(myProfile.getDomain()));
+    }
+
+    private BidGeneration(LinearAdditive myProfile, Map<PartyId, Integer> powers, int minOpponentPower,
+                          UtilityOfferStringToIntOptionsMapper mapper) {
+        this(myProfile, powers, minOpponentPower, DrawPlan.of(myProfile, mapper), new CoalitionTracker(myProfile, mapper),
+                new Sampler(), null);
+    }
+
+    /**
+     * @param drawPlan The draw plan of {@code myProfile}, computed once per profile with
+     *                 {@link DrawPlan#of(UtilityTable, UtilityOfferStringToIntOptionsMapper)}.
+     * @param coalitionTracker Tracker of the opponents of {@code myProfile}, kept between turns so only the
+     *                         distances of changed opponent models are recomputed.
+     * @param sampler Source of randomness for drawing the values, the primitive generator uses its own.
+     * @param primitiveGenerator If not null, the bids are generated with this generator on int[] bids,
+     *                           which gives the same bids without allocating per issue and option.
+     */
+    public BidGeneration(LinearAdditive myProfile, Map<PartyId, Integer> powers, int minOpponentPower,
+                         DrawPlan drawPlan, CoalitionTracker coalitionTracker, Sampler sampler,
+                         PrimitiveBidGenerator primitiveGenerator) {
+        if (!coalitionTracker.getMapper().hasSameIndices(drawPlan.getMapper())) {
+            throw new IllegalArgumentException("The coalition tracker and draw plan must use the same indices");
+        }
+        if (primitiveGenerator != null && !coalitionTracker.getMapper().hasSameIndices(primitiveGenerator.getMapper())) {
+            throw new IllegalArgumentException("The coalition tracker and primitive generator must use the same indices");
+        }
+
         this.myProfile = myProfile;
 
         this.powers = powers;
         this.minOpponentPower = minOpponentPower;
+        this.drawPlan = drawPlan;
+        this.coalitionTracker = coalitionTracker;
+        this.sampler = sampler;
+        this.primitiveGenerator = primitiveGenerator;
     }
 
+    /**
+     * The issue draw order of a profile, with our weighted utility of every option and the maximum utility
+     * that is still available after each issue, so bids can be generated without profile lookups. Shared by
+     * the generation on geniusweb objects and by {@link PrimitiveBidGenerator}. Immutable.
+     */
+    public static class DrawPlan {
 
-    public Bid generateBid(Map<PartyId, LinearAdditive> opponents, double minTotalUtility) {
+        // Mapper that defines the issue and option indices
+        final UtilityOfferStringToIntOptionsMapper mapper;
 
-        List<Tuple<PartyId, Double>> partyDistances = new ArrayList<>();
+        // The table of the profile
+        final UtilityTable table;
 
-        // List of parties that are close to us
-        for(Map.Entry<PartyId, LinearAdditive> opp: opponents.entrySet()) {
-            partyDistances.add(new Tuple<>(opp.getKey(), distance(this.myProfile, opp.getValue())));
-        }
+        // Issue indices in ascending order of weight
+        final int[] drawOrder;
 
-        partyDistances.sort(Comparator.comparingDouble(Tuple::get2));
+        // Weighted utility per issue per option
+        final double[][] weightedUtilities;
 
-        List<PartyId> targetParties = new ArrayList<>();
+        // The option with the maximum utility per issue
+        final int[] bestOptions;
 
-        // Add parties until a sum of powers is reached, higher than the minPower
-        for (int i = 0; i < partyDistances.size() && targetParties.stream().mapToInt(this.powers::get).sum() < minOpponentPower; i++) {
-            targetParties.add(partyDistances.get(i).get1());
-        }
+        // Minimum weighted utility per issue
+        final double[] worstUtilities;
 
-        assert targetParties.stream().mapToInt(this.powers::get).sum() >= minOpponentPower;
+        // maxRemainingUtility[k] is the maximum utility of the issues drawOrder[k..], maxRemainingUtility[nIssues] is 0
+        final double[] maxRemainingUtility;
 
-        Map<String, BigDecimal> issueWeights = myProfile.getWeights();
+        private DrawPlan(UtilityOfferStringToIntOptionsMapper mapper, UtilityTable table) {
+            this.mapper = mapper;
+            this.table = table;
 
-        // Create an issue draw order where we start with the lowest weight issues
-        List<String> issueDrawOrder = this.myProfile.getDomain().getIssues().stream()
-                .sorted(Comparator.comparing(issueWeights::get))
-                .collect(Collectors.toList());
+            int nIssues = table.getIssueCount();
 
-        Bid bid = null;
+            weightedUtilities = new double[nIssues][];
+            bestOptions = new int[nIssues];
+            worstUtilities = new double[nIssues];
 
-        // Create partial bids starting with the issues that have the lowest weight
-        for (String issue: issueDrawOrder) {
-            bid = generatePartialBid(issue, bid, minTotalUtility, targetParties.stream().collect(Collectors.toMap(party -> party, opponents::get)));
-        }
+            for (int i = 0; i < nIssues; i++) {
+                weightedUtilities[i] = new double[mapper.issuesOptions[i]];
+                worstUtilities[i] = Double.POSITIVE_INFINITY;
 
-        return bid;
-    }
+                for (int j = 0; j < weightedUtilities[i].length; j++) {
+                    weightedUtilities[i][j] = table.getWeightedUtility(i, j);
 
-    // minTotalUtility is the threshold that the bid should have
-    private Bid generatePartialBid(String issue, Bid currentPartialBid, double minTotalUtility, Map<PartyId, LinearAdditive> parties) {
+                    if (weightedUtilities[i][j] > weightedUtilities[i][bestOptions[i]]) {
+                        bestOptions[i] = j;
+                    }
 
-    	// Compute the remaining issues
-        Set<String> remainingIssues = myProfile.getDomain().getIssues();
-        if (currentPartialBid != null) {
-            remainingIssues.removeAll(currentPartialBid.getIssues());
-        }
-        remainingIssues.remove(issue);
+                    worstUtilities[i] = Math.min(worstUtilities[i], weightedUtilities[i][j]);
+                }
+            }
 
-        // Calculate the maximum utility available after a bid has been generated for the current issue
-        double maxRemainingUtility = calculateMaxRemainingUtility(this.myProfile, remainingIssues);
+            // Start with the lowest weight issues
+            drawOrder = IntStream.range(0, nIssues).boxed()
+                    .sorted(Comparator.comparingDouble(table::getWeight))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
 
-        double currentUtility;
+            maxRemainingUtility = new double[nIssues + 1];
+            for (int k = nIssues - 1; k >= 0; k--) {
+                int issue = drawOrder[k];
+                maxRemainingUtility[k] = maxRemainingUtility[k + 1] + weightedUtilities[issue][bestOptions[issue]];
+            }
+        }
 
-        if (currentPartialBid != null) {
-            currentUtility = this.myProfile.getUtility(currentPartialBid).doubleValue();
-        } else {
-            currentUtility = 0;
+        /**
+         * Compute the draw plan of a profile.
+         * @param profile The profile.
+         * @param mapper Mapper that defines the issue and option indices.
+         * @return The draw plan.
+         */
+        public static DrawPlan of(LinearAdditive profile, UtilityOfferStringToIntOptionsMapper mapper) {
+            return of(UtilityTable.of(profile, mapper), mapper);
         }
 
-        // calculate minimum utility required for the current issue to reach the threshold
-        double minUtilityForCurrentIssue = minTotalUtility - currentUtility - maxRemainingUtility;
+        /**
+         * Compute the draw plan of a profile.
+         * @param table The table of the profile.
+         * @param mapper Mapper that defines the issue and option indices of {@code table}.
+         * @return The draw plan.
+         */
+        public static DrawPlan of(UtilityTable table, UtilityOfferStringToIntOptionsMapper mapper) {
+            return new DrawPlan(mapper, table);
+        }
 
-        // All possible values for the current issue that would get us over the threshold
-        Set<DiscreteValue> consideredValues = new HashSet<>();
+        public UtilityOfferStringToIntOptionsMapper getMapper() {
+            return mapper;
+        }
 
-        Tuple<Value, Double> maxValue = null;
-        for (Value value: this.myProfile.getDomain().getValues(issue)) {
-            double utility = this.myProfile.getUtility(new Bid(issue, value)).doubleValue();
+        /**
+         * @return The table of the profile, indexed like the mapper.
+         */
+        public UtilityTable getTable() {
+            return table;
+        }
 
-            if (utility >= minUtilityForCurrentIssue) {
-                consideredValues.add((DiscreteValue) value);
+        /**
+         * @return The largest number of options of an issue.
+         */
+        int getMaxOptions() {
+            int maxOptions = 0;
+            for (double[] utilities : weightedUtilities) {
+                maxOptions = Math.max(maxOptions, utilities.length);
             }
 
-            if (maxValue  == null || maxValue.get2() < utility) {
-                maxValue = new Tuple<>(value, utility);
-            }
+            return maxOptions;
         }
+    }
+
+
+    public Bid generateBid(Map<PartyId, LinearAdditive> opponents, double minTotalUtility) {
+        if (primitiveGenerator != null) {
+            return generatePrimitiveBid(opponents, minTotalUtility);
+        }
+
+        coalitionTracker.update(opponents);
 
-        assert maxValue != null;
+        List<LinearAdditive> targetParties = selectTargetParties().stream()
+                .map(opponents::get)
+                .collect(Collectors.toList());
 
-        // Make sure at least one value is under consideration
-        consideredValues.add((DiscreteValue) maxValue.get1());
+        Map<String, Value> bid = new HashMap<>();
+        double currentUtility = 0;
 
-        Bid currentIssuePartialBid = new Bid(issue, drawIssueValue(issue, new ArrayList<>(consideredValues), parties));
+        // Choose values starting with the issues that have the lowest weight
+        for (int k = 0; k < drawPlan.drawOrder.length; k++) {
+            int issue = drawPlan.drawOrder[k];
+            int option = drawIssueValue(k, currentUtility, minTotalUtility, targetParties);
 
-        if (currentPartialBid == null) {
-            return currentIssuePartialBid;
+            bid.put(drawPlan.mapper.mapIndexToIssue(issue), drawPlan.mapper.mapOptionIndexToValue(issue, option));
+            currentUtility += drawPlan.weightedUtilities[issue][option];
         }
 
-        return currentPartialBid.merge(currentIssuePartialBid);
+        return new Bid(bid);
     }
 
-    // Draw an issue value proportional to the summed utility of the given parties
-    private Value drawIssueValue(String issue, List<DiscreteValue> valueSet, Map<PartyId, LinearAdditive> parties) {
-
-        List<Value> possibleValues = new ArrayList<>();
-        ArrayList<Double> distribution = new ArrayList<>();
+    // Generate the bid with the primitive generator, only the result is converted to a geniusweb bid
+    private Bid generatePrimitiveBid(Map<PartyId, LinearAdditive> opponents, double minTotalUtility) {
+        coalitionTracker.update(opponents);
 
-        for(Map.Entry<Value, Double> entry: computeExpectedSumUtilities(issue, valueSet, parties).entrySet()) {
-            possibleValues.add(entry.getKey());
-            distribution.add(entry.getValue());
-        }
+        PrimitiveBidGenerator.Targets targets = primitiveGenerator.prepare(selectTargetTables());
 
-        int index = drawFromDiscreteDist(distribution);
+        int[] bid = primitiveGenerator.generateBid(targets, minTotalUtility, new int[drawPlan.drawOrder.length]);
 
-        return possibleValues.get(index);
+        return primitiveGenerator.getMapper().convertToBid(bid);
     }
 
-    // Compute the sum of utilities over all parties per issue value
-    private Map<Value, Double> computeExpectedSumUtilities(String issue, List<DiscreteValue> valueSet, Map<PartyId, LinearAdditive> parties) {
-        Map<Value, Double> expectedSumUtilities = new HashMap<>();
+    /**
+     * Generate a batch of candidate bids and return the best ones.
+     * @param opponents The opponent models.
+     * @param minTotalUtility The utility threshold the bids should reach for us.
+     * @param candidateGenerator The generator of the candidates, with the same indices as the coalition tracker.
+     * @param n The number of candidates.
+     * @param k The number of bids to return.
+     * @param objectiveFactory Creates the objective the candidates are scored with.
+     * @return The best min(k, n) candidates, best first.
+     */
+    public List<Bid> generateBestBids(Map<PartyId, LinearAdditive> opponents, double minTotalUtility,
+                                      CandidateBidGenerator candidateGenerator, int n, int k,
+                                      BidObjective.Factory objectiveFactory) {
+        coalitionTracker.update(opponents);
+
+        int[][] bids = candidateGenerator.generateBestBids(selectTargetTables(), minTotalUtility, n, k,
+                objectiveFactory.create(coalitionTracker.getTables(), powers));
+
+        return convertToBids(bids);
+    }
 
-        for (Value value: valueSet) {
-            Bid bid = new Bid(issue, value);
+    /**
+     * Keep generating candidate bids until the time budget runs out, and return the best ones.
+     * @param opponents The opponent models.
+     * @param minTotalUtility The utility threshold the bids should reach for us.
+     * @param candidateGenerator The generator of the candidates, with the same indices as the coalition tracker.
+     * @param budgetMs The time budget in ms.
+     * @param k The number of bids to return.
+     * @param objectiveFactory Creates the objective the candidates are scored with.
+     * @return The best k candidates, best first.
+     */
+    public List<Bid> generateBestBidsWithin(Map<PartyId, LinearAdditive> opponents, double minTotalUtility,
+                                            CandidateBidGenerator candidateGenerator, long budgetMs, int k,
+                                            BidObjective.Factory objectiveFactory) {
+        long start = System.nanoTime();
+
+        coalitionTracker.update(opponents);
+
+        // The budget includes the preparation
+        long remainingMs = budgetMs - (System.nanoTime() - start) / 1000000;
+
+        int[][] bids = candidateGenerator.generateBestBidsWithin(selectTargetTables(), minTotalUtility, remainingMs, k,
+                objectiveFactory.create(coalitionTracker.getTables(), powers));
+
+        return convertToBids(bids);
+    }
 
-            expectedSumUtilities.put(value, parties.values().stream().mapToDouble(space -> space.getUtility(bid).doubleValue()).sum());
+    private List<Bid> convertToBids(int[][] bids) {
+        List<Bid> result = new ArrayList<>();
+        for (int[] bid : bids) {
+            result.add(coalitionTracker.getMapper().convertToBid(bid));
         }
 
-        return expectedSumUtilities;
+        return result;
     }
 
-    // Compute the maximum remaining utility if the maximum value is chosen for each remaining issue
-    public static double calculateMaxRemainingUtility(LinearAdditive profile,  Set<String> remainingIssues) {
-
-        double utility = 0;
+    // Select the tables of the target parties
+    private UtilityTable[] selectTargetTables() {
+        return selectTargetParties().stream()
+                .map(coalitionTracker::getTable)
+                .toArray(UtilityTable[]::new);
+    }
 
-        Map<String, ValueSetUtilities> utilities = profile.getUtilities();
-        Map<String, BigDecimal> weights = profile.getWeights();
+    // Select the closest parties until a sum of powers is reached, higher than the minPower
+    private List<PartyId> selectTargetParties() {
+        List<PartyId> targetParties = coalitionTracker.selectTargets(powers, minOpponentPower);
 
-        for (String issue : remainingIssues) {
-            List<Value> possibleValues = new ArrayList<>();
+        assert targetParties.stream().mapToInt(party -> powers.getOrDefault(party, 1)).sum() >= minOpponentPower;
 
-            profile.getDomain().getValues(issue).forEach(possibleValues::add);
+        return targetParties;
+    }
 
-            Value value = possibleValues.stream().max(Comparator.comparingDouble(v -> utilities.get(issue).getUtility(v).doubleValue())).get();
+    // Draw an option for the k-th issue of the draw plan, such that the threshold minTotalUtility can still be reached
+    private int drawIssueValue(int k, double currentUtility, double minTotalUtility, List<LinearAdditive> parties) {
+        int issue = drawPlan.drawOrder[k];
+        double[] utilities = drawPlan.weightedUtilities[issue];
 
-            utility += weights.get(issue).doubleValue() * utilities.get(issue).getUtility(value).doubleValue();
+        // calculate minimum utility required for the current issue to reach the threshold
+        double minUtilityForCurrentIssue = minTotalUtility - currentUtility - drawPlan.maxRemainingUtility[k + 1];
+
+        // All possible values for the current issue that would get us over the threshold,
+        // and at least the value with the maximum utility
+        int[] consideredValues = new int[utilities.length];
+        double[] distribution = new double[utilities.length];
+        int nConsidered = 0;
+
+        for (int j = 0; j < utilities.length; j++) {
+            if (utilities[j] >= minUtilityForCurrentIssue || j == drawPlan.bestOptions[issue]) {
+                consideredValues[nConsidered] = j;
+                distribution[nConsidered] = computeExpectedSumUtility(drawPlan.mapper.mapIndexToIssue(issue),
+                        drawPlan.mapper.mapOptionIndexToValue(issue, j), parties);
+                nConsidered++;
+            }
         }
 
-        return utility;
+        // Draw a value proportional to the summed utility of the given parties
+        return consideredValues[sampler.draw(distribution, nConsidered)];
     }
 
+    // Compute the sum of utilities over all parties of an issue value
+    private double computeExpectedSumUtility(String issue, Value value, List<LinearAdditive> parties) {
+        Bid bid = new Bid(issue, value);
 
+        return parties.stream().mapToDouble(space -> space.getUtility(bid).doubleValue()).sum();
+    }
 }
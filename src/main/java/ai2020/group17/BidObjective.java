@@ -0,0 +1,73 @@
+package ai2020.group17;
+
+import geniusweb.actions.PartyId;
+
+import java.util.Map;
+
+/**
+ * Score of an int[] bid, higher is better. Used to select the best of a batch of candidate bids.
+ *
+ * Implementations are called concurrently, so they must not modify any state.
+ */
+@FunctionalInterface
+public interface BidObjective {
+
+    double score(int[] bid);
+
+    /**
+     * Creates the objective for a turn from the current opponent models.
+     */
+    @FunctionalInterface
+    interface Factory {
+
+        /**
+         * @param opponents The tables of the opponent models, indexed like the scored bids.
+         * @param powers The powers of the parties.
+         * @return The objective.
+         */
+        BidObjective create(Map<PartyId, UtilityTable> opponents, Map<PartyId, Integer> powers);
+    }
+
+    /**
+     * Sum of the predicted utilities of all opponents.
+     */
+    Factory SUMMED_UTILITY = (opponents, powers) -> {
+        UtilityTable[] tables = opponents.values().toArray(new UtilityTable[0]);
+
+        return bid -> {
+            double sum = 0;
+
+            for (UtilityTable table : tables) {
+                sum += table.getUtility(bid);
+            }
+
+            return sum;
+        };
+    };
+
+    /**
+     * Expected power of the opponents that accept, where the predicted utility of an opponent (clipped to [0, 1])
+     * is its probability to accept, like the opponent models are trained.
+     */
+    Factory POWER_WEIGHTED_ACCEPTANCE = (opponents, powers) -> {
+        UtilityTable[] tables = new UtilityTable[opponents.size()];
+        double[] tablePowers = new double[opponents.size()];
+
+        int i = 0;
+        for (Map.Entry<PartyId, UtilityTable> opponent : opponents.entrySet()) {
+            tables[i] = opponent.getValue();
+            tablePowers[i] = powers.getOrDefault(opponent.getKey(), 1);
+            i++;
+        }
+
+        return bid -> {
+            double expectedPower = 0;
+
+            for (int j = 0; j < tables.length; j++) {
+                expectedPower += tablePowers[j] * Math.min(1, Math.max(0, tables[j].getUtility(bid)));
+            }
+
+            return expectedPower;
+        };
+    };
+}
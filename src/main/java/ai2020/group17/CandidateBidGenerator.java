@@ -0,0 +1,188 @@
+package ai2020.group17;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Generates a batch of candidate bids with a {@link PrimitiveBidGenerator} and selects the best ones
+ * according to a {@link BidObjective}.
+ *
+ * The candidates are generated and scored in fixed size chunks, each with its own generator with a sampler split
+ * from the sampler of this class, so the result does not depend on the number of cores that are used.
+ */
+public class CandidateBidGenerator {
+
+    // Number of candidates per chunk of work
+    static final int CHUNK_SIZE = 256;
+
+    private final PrimitiveBidGenerator generator;
+    private final Sampler sampler;
+    private final boolean parallel;
+
+    /**
+     * @param generator Generator for our profile.
+     * @param sampler Source of the samplers of the chunks.
+     * @param parallel Whether to generate the chunks in parallel on the common fork join pool.
+     */
+    public CandidateBidGenerator(PrimitiveBidGenerator generator, Sampler sampler, boolean parallel) {
+        this.generator = generator;
+        this.sampler = sampler;
+        this.parallel = parallel;
+    }
+
+    public PrimitiveBidGenerator getGenerator() {
+        return generator;
+    }
+
+    /**
+     * Generate {@code n} candidate bids and return the {@code k} best.
+     * @param targets The tables of the target opponents, see {@link PrimitiveBidGenerator#generateBid}.
+     * @param minTotalUtility The utility threshold the bids should reach for us.
+     * @param n The number of candidates.
+     * @param k The number of bids to return.
+     * @param objective The objective to score the candidates with.
+     * @return The best min(k, n) candidates, best first.
+     */
+    public int[][] generateBestBids(UtilityTable[] targets, double minTotalUtility, int n, int k, BidObjective objective) {
+        PrimitiveBidGenerator.Targets preparedTargets = generator.prepare(targets);
+        TopCandidates best = new TopCandidates(k);
+
+        generateChunks(preparedTargets, minTotalUtility, objective, 0, (n + CHUNK_SIZE - 1) / CHUNK_SIZE, n, best);
+
+        return best.toArray();
+    }
+
+    /**
+     * Keep generating candidate bids until the time budget runs out, and return the {@code k} best.
+     * At least one chunk of candidates is generated, even if the budget is 0. The number of candidates
+     * depends on the speed of the machine, so the result is not reproducible.
+     * @param targets The tables of the target opponents, see {@link PrimitiveBidGenerator#generateBid}.
+     * @param minTotalUtility The utility threshold the bids should reach for us.
+     * @param budgetMs The time budget in ms.
+     * @param k The number of bids to return.
+     * @param objective The objective to score the candidates with.
+     * @return The best k candidates, best first.
+     */
+    public int[][] generateBestBidsWithin(UtilityTable[] targets, double minTotalUtility, long budgetMs, int k,
+                                          BidObjective objective) {
+        long deadline = System.nanoTime() + budgetMs * 1000000;
+
+        PrimitiveBidGenerator.Targets preparedTargets = generator.prepare(targets);
+        TopCandidates best = new TopCandidates(k);
+
+        // Generate one chunk per core at a time, and check the budget in between
+        int chunksPerStep = parallel ? Math.max(1, ForkJoinPool.getCommonPoolParallelism()) : 1;
+        int firstChunk = 0;
+
+        do {
+            generateChunks(preparedTargets, minTotalUtility, objective, firstChunk, chunksPerStep, Long.MAX_VALUE, best);
+            firstChunk += chunksPerStep;
+        } while (System.nanoTime() < deadline);
+
+        return best.toArray();
+    }
+
+    /**
+     * Generate the candidates of a range of chunks, and add them to {@code best}.
+     * @param n The total number of candidates, the last chunk is cut off at {@code n}.
+     */
+    private void generateChunks(PrimitiveBidGenerator.Targets preparedTargets, double minTotalUtility, BidObjective objective,
+                                int firstChunk, int nChunks, long n, TopCandidates best) {
+        int nIssues = generator.getMyTable().getIssueCount();
+
+        // Split the samplers in order, so they don't depend on the order in which the chunks run
+        Sampler[] chunkSamplers = new Sampler[nChunks];
+        for (int chunk = 0; chunk < nChunks; chunk++) {
+            chunkSamplers[chunk] = sampler.split();
+        }
+
+        TopCandidates[] chunkBest = new TopCandidates[nChunks];
+
+        IntStream chunks = IntStream.range(0, nChunks);
+        if (parallel) {
+            chunks = chunks.parallel();
+        }
+
+        chunks.forEach(chunk -> {
+            PrimitiveBidGenerator chunkGenerator = generator.withSampler(chunkSamplers[chunk]);
+            TopCandidates top = new TopCandidates(best.k);
+            int[] bid = new int[nIssues];
+
+            long start = (long) (firstChunk + chunk) * CHUNK_SIZE;
+            for (long i = start; i < Math.min(n, start + CHUNK_SIZE); i++) {
+                chunkGenerator.generateBid(preparedTargets, minTotalUtility, bid);
+                top.offer(bid, objective.score(bid), i);
+            }
+
+            chunkBest[chunk] = top;
+        });
+
+        // Merge in order, ties are broken on the index of the candidate
+        for (TopCandidates top : chunkBest) {
+            best.addAll(top);
+        }
+    }
+
+    private static class Candidate {
+        final int[] bid;
+        final double score;
+
+        // Index of the candidate in the order of generation
+        final long index;
+
+        Candidate(int[] bid, double score, long index) {
+            this.bid = bid;
+            this.score = score;
+            this.index = index;
+        }
+    }
+
+    /**
+     * The k best candidates, on equal scores the first generated candidate is better.
+     */
+    private static class TopCandidates {
+
+        private static final Comparator<Candidate> WORST_FIRST = Comparator
+                .comparingDouble((Candidate candidate) -> candidate.score)
+                .thenComparing(candidate -> candidate.index, Comparator.reverseOrder());
+
+        private final int k;
+        private final PriorityQueue<Candidate> heap = new PriorityQueue<>(WORST_FIRST);
+
+        TopCandidates(int k) {
+            this.k = k;
+        }
+
+        // Add a candidate if it is among the k best, the bid is copied only then
+        void offer(int[] bid, double score, long index) {
+            if (heap.size() < k) {
+                heap.add(new Candidate(bid.clone(), score, index));
+            } else if (k > 0) {
+                Candidate worst = heap.peek();
+
+                if (score > worst.score || (score == worst.score && index < worst.index)) {
+                    heap.poll();
+                    heap.add(new Candidate(bid.clone(), score, index));
+                }
+            }
+        }
+
+        void addAll(TopCandidates other) {
+            for (Candidate candidate : other.heap) {
+                offer(candidate.bid, candidate.score, candidate.index);
+            }
+        }
+
+        int[][] toArray() {
+            int[][] bids = new int[heap.size()][];
+
+            for (int i = bids.length - 1; i >= 0; i--) {
+                bids[i] = heap.poll().bid;
+            }
+
+            return bids;
+        }
+    }
+}
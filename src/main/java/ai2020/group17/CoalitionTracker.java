@@ -0,0 +1,157 @@
+package ai2020.group17;
+
+import geniusweb.actions.PartyId;
+import geniusweb.profile.utilityspace.LinearAdditive;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Keeps the opponents sorted on the distance of their model to our profile, to select the closest coalition.
+ *
+ * The distance of an opponent is only recomputed when its model changes. Opponent models are immutable and
+ * every training step publishes a new model, so a change is detected by identity. Not thread safe.
+ */
+public class CoalitionTracker {
+
+    private final UtilityOfferStringToIntOptionsMapper mapper;
+    private final UtilityTable myTable;
+
+    // The tracked state of each opponent
+    private final Map<PartyId, Opponent> opponents = new HashMap<>();
+
+    // The opponents in ascending order of distance
+    private final TreeSet<Opponent> sorted = new TreeSet<>(Comparator
+            .comparingDouble((Opponent opponent) -> opponent.distance)
+            .thenComparing(opponent -> opponent.party.getName()));
+
+    private static class Opponent {
+        final PartyId party;
+        final LinearAdditive model;
+        final UtilityTable table;
+        final double distance;
+
+        Opponent(PartyId party, LinearAdditive model, UtilityTable table, double distance) {
+            this.party = party;
+            this.model = model;
+            this.table = table;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Create tracker.
+     * @param myProfile Our profile.
+     * @param mapper Mapper that defines the issue and option indices of the tables.
+     */
+    public CoalitionTracker(LinearAdditive myProfile, UtilityOfferStringToIntOptionsMapper mapper) {
+        this(UtilityTable.of(myProfile, mapper), mapper);
+    }
+
+    /**
+     * Create tracker.
+     * @param myTable The utility table of our profile, indexed like the mapper.
+     * @param mapper Mapper that defines the issue and option indices of the tables.
+     */
+    public CoalitionTracker(UtilityTable myTable, UtilityOfferStringToIntOptionsMapper mapper) {
+        this.mapper = mapper;
+        this.myTable = myTable;
+    }
+
+    public UtilityOfferStringToIntOptionsMapper getMapper() {
+        return mapper;
+    }
+
+    /**
+     * Update the tracked opponents to the given models. Opponents that are missing are forgotten.
+     * @param models The current opponent models.
+     */
+    public void update(Map<PartyId, LinearAdditive> models) {
+        for (Map.Entry<PartyId, LinearAdditive> model : models.entrySet()) {
+            Opponent previous = opponents.get(model.getKey());
+
+            if (previous != null && previous.model == model.getValue()) {
+                continue;
+            }
+
+            UtilityTable table = UtilityTable.of(model.getValue(), mapper);
+            Opponent opponent = new Opponent(model.getKey(), model.getValue(), table, Helper.distance(myTable, table));
+
+            if (previous != null) {
+                sorted.remove(previous);
+            }
+
+            opponents.put(opponent.party, opponent);
+            sorted.add(opponent);
+        }
+
+        if (opponents.size() > models.size()) {
+            Iterator<Opponent> iterator = sorted.iterator();
+
+            while (iterator.hasNext()) {
+                Opponent opponent = iterator.next();
+
+                if (!models.containsKey(opponent.party)) {
+                    iterator.remove();
+                    opponents.remove(opponent.party);
+                }
+            }
+        }
+    }
+
+    /**
+     * Select the closest opponents until their summed power reaches {@code minPower}.
+     * @param powers The powers of the parties, 1 for parties without a known power.
+     * @param minPower The minimum summed power of the selection.
+     * @return The selected opponents, closest first.
+     */
+    public List<PartyId> selectTargets(Map<PartyId, Integer> powers, int minPower) {
+        List<PartyId> targets = new ArrayList<>();
+        int power = 0;
+
+        for (Opponent opponent : sorted) {
+            if (power >= minPower) {
+                break;
+            }
+
+            targets.add(opponent.party);
+            power += powers.getOrDefault(opponent.party, 1);
+        }
+
+        return targets;
+    }
+
+    /**
+     * @param party A tracked opponent.
+     * @return The table of the model of the opponent, indexed like the mapper.
+     */
+    public UtilityTable getTable(PartyId party) {
+        return opponents.get(party).table;
+    }
+
+    /**
+     * @return The tables of the models of all tracked opponents.
+     */
+    public Map<PartyId, UtilityTable> getTables() {
+        Map<PartyId, UtilityTable> tables = new HashMap<>();
+
+        for (Opponent opponent : opponents.values()) {
+            tables.put(opponent.party, opponent.table);
+        }
+
+        return tables;
+    }
+
+    /**
+     * @param party A tracked opponent.
+     * @return The distance of the model of the opponent to our profile, see {@link Helper#distance}.
+     */
+    public double getDistance(PartyId party) {
+        return opponents.get(party).distance;
+    }
+}
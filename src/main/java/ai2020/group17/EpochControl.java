@@ -0,0 +1,93 @@
+package ai2020.group17;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Decides after each epoch of a call to train whether another epoch is run, see {@link TrainingParameters}.
+ *
+ * Training stops after the maximum number of epochs, when the time budget has run out, or when the summed loss
+ * of an epoch improved by less than the tolerance (relative to the previous epoch). The loss of a training step
+ * is computed together with its gradient step, so it is the loss before the step. At least one epoch is run.
+ * Plain java, the models run their own steps, see {@link #step}. Create one per call to train, not thread safe.
+ */
+public class EpochControl {
+
+    private final int maxEpochs;
+    private final double tolerance;
+    private final long deadline;
+    private final boolean hasDeadline;
+
+    private int epochs = 0;
+
+    // Summed loss of the current and the previous epoch
+    private double loss = 0;
+    private double previousLoss = Double.NaN;
+
+    /**
+     * Start the clock of the time budget.
+     * @param trainingParameters The epoch cap, tolerance and time budget.
+     */
+    public EpochControl(TrainingParameters trainingParameters) {
+        maxEpochs = trainingParameters.getMaxEpochs();
+        tolerance = trainingParameters.getTolerance();
+        hasDeadline = trainingParameters.getBudgetMs() > 0;
+        deadline = System.nanoTime() + trainingParameters.getBudgetMs() * 1000000;
+    }
+
+    /**
+     * @return Whether early stopping is enabled, so the loss of every training step has to be added.
+     */
+    public boolean tracksLoss() {
+        return tolerance > 0;
+    }
+
+    /**
+     * @param stepLoss The loss of a training step of the current epoch.
+     */
+    public void addLoss(double stepLoss) {
+        loss += stepLoss;
+    }
+
+    /**
+     * Run a training step, and add its loss if the loss is tracked.
+     * @param step Runs the step without computing its loss.
+     * @param stepWithLoss Runs the step and returns its loss.
+     */
+    public void step(Runnable step, DoubleSupplier stepWithLoss) {
+        if (tracksLoss()) {
+            addLoss(stepWithLoss.getAsDouble());
+        } else {
+            step.run();
+        }
+    }
+
+    /**
+     * End the current epoch.
+     * @return Whether another epoch should be run.
+     */
+    public boolean nextEpoch() {
+        epochs++;
+
+        if (epochs >= maxEpochs || (hasDeadline && System.nanoTime() - deadline >= 0)) {
+            return false;
+        }
+
+        if (tracksLoss()) {
+            boolean converged = previousLoss - loss < tolerance * previousLoss;
+
+            previousLoss = loss;
+            loss = 0;
+
+            return !converged;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return The number of epochs that were ended.
+     */
+    public int getEpochs() {
+        return epochs;
+    }
+}
@@ -1,32 +1,33 @@
 package ai2020.group17;
 
 import geniusweb.actions.*;
-import geniusweb.bidspace.BidsWithUtility;
-import geniusweb.bidspace.Interval;
 import geniusweb.inform.*;
 import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.Domain;
 import geniusweb.party.Capabilities;
 import geniusweb.party.DefaultParty;
 import geniusweb.profile.Profile;
 import geniusweb.profile.utilityspace.LinearAdditive;
 import geniusweb.profile.utilityspace.LinearAdditiveUtilitySpace;
-import geniusweb.profile.utilityspace.UtilitySpace;
 import geniusweb.profileconnection.ProfileConnectionFactory;
 import geniusweb.profileconnection.ProfileInterface;
 import geniusweb.progress.Progress;
 import geniusweb.progress.ProgressRounds;
+import geniusweb.progress.ProgressTime;
 import tudelft.utilities.logging.Reporter;
 
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 /**
  * Party that generates random offers biased towards what we predict the opponents value.
- * It concedes slowly by reducing the minimum threshold of the offer proportional to the current round.
+ * It concedes slowly by reducing the minimum threshold of the offer proportional to the current round,
+ * or to the elapsed time in a time based negotiation.
  *
  * Makes use of a custom opponent model implemented in tensorflow, and a custom bidding strategy that
  * generates random bids, which are biased to what we predict the opponents value based on the opponent models.
@@ -48,6 +49,117 @@ import java.util.stream.Collectors;
  * <td>power</td>
  * <td>This value is used as power of the current agent. Default is 1</td>
  * </tr>
+ * <tr>
+ * <td>replayBufferSize</td>
+ * <td>The number of earlier observed bids the opponent models replay when training on a new action.
+ * 0 trains online on the new bids only. Default is unbounded, which replays the full history.</td>
+ * </tr>
+ * <tr>
+ * <td>replayPolicy</td>
+ * <td>Which earlier bids are kept in a bounded replay buffer: "recent" or "reservoir" (a uniform sample
+ * of the full history). Default is "recent".</td>
+ * </tr>
+ * <tr>
+ * <td>backend</td>
+ * <td>Implementation of the opponent models: "tensorflow", "tensorflow_gather" (tensorflow, with the bids
+ * fed as indices instead of one hot vectors) or "java" (plain java, no native libraries).
+ * Default is "tensorflow".</td>
+ * </tr>
+ * <tr>
+ * <td>trainingMode</td>
+ * <td>How the opponent models are fed the training examples: "mini_batch" (one gradient step per batchSize
+ * examples) or "per_example" (one gradient step per example, the behaviour before mini-batches were added).
+ * Default is "per_example".</td>
+ * </tr>
+ * <tr>
+ * <td>batchSize</td>
+ * <td>The number of examples per gradient step in the "mini_batch" training mode, 0 uses the full training
+ * set. Default is 16.</td>
+ * </tr>
+ * <tr>
+ * <td>learningRate</td>
+ * <td>Gradient descent learning rate of the opponent models. Default is 0.01.</td>
+ * </tr>
+ * <tr>
+ * <td>maxEpochs</td>
+ * <td>Maximum number of passes over the training data each time an opponent model is trained. Default is 10.</td>
+ * </tr>
+ * <tr>
+ * <td>trainingTolerance</td>
+ * <td>Training stops early when the loss of a pass improves by less than this fraction of the loss of the
+ * previous pass. 0 always trains maxEpochs passes. Default is 0.005.</td>
+ * </tr>
+ * <tr>
+ * <td>trainingBudgetMs</td>
+ * <td>Time budget (in ms) each time an opponent model is trained, checked after each pass. Default is no
+ * budget.</td>
+ * </tr>
+ * <tr>
+ * <td>sharedGraph</td>
+ * <td>If true (and the backend is "tensorflow"), all opponent models share a single tensorflow graph
+ * and session, with a slot per opponent. The opponents are then trained together, in one run per
+ * mini-batch for all opponents. Default is false.</td>
+ * </tr>
+ * <tr>
+ * <td>asyncTraining</td>
+ * <td>If true, the opponent models are trained on a background thread instead of while handling the
+ * {@link ActionDone}. Default is false.</td>
+ * </tr>
+ * <tr>
+ * <td>maxModelWaitMs</td>
+ * <td>With asyncTraining, how long (in ms) bidding may wait for queued training to finish before it uses
+ * the most recent, possibly stale, opponent models. 0 never waits. Default is 100.</td>
+ * </tr>
+ * <tr>
+ * <td>trainingThreads</td>
+ * <td>With asyncTraining, the maximum number of opponent models that are trained in parallel.
+ * Not used with sharedGraph. Default is the number of available processors.</td>
+ * </tr>
+ * <tr>
+ * <td>primitiveBidGeneration</td>
+ * <td>If true, bids are generated on int[] bids with precomputed utility tables, see
+ * {@link PrimitiveBidGenerator}. Default is false.</td>
+ * </tr>
+ * <tr>
+ * <td>candidateBids</td>
+ * <td>Number of candidate bids generated per offer, of which the best according to bidObjective is offered.
+ * Values above 1 imply primitiveBidGeneration. Default is 1.</td>
+ * </tr>
+ * <tr>
+ * <td>bidObjective</td>
+ * <td>Objective to select the best candidate bid with: "summedUtility" (the summed predicted utility of the
+ * opponents) or "powerWeightedAcceptance" (the expected power of the opponents that accept).
+ * Default is "summedUtility".</td>
+ * </tr>
+ * <tr>
+ * <td>parallelCandidates</td>
+ * <td>Whether candidate bids are generated on all cores. Default is true.</td>
+ * </tr>
+ * <tr>
+ * <td>anytimeBidding</td>
+ * <td>If true, candidate bids are generated until the bidding budget runs out, and the best according to
+ * bidObjective is offered. Implies primitiveBidGeneration. Default is false.</td>
+ * </tr>
+ * <tr>
+ * <td>bidBudgetMs</td>
+ * <td>With anytimeBidding, the time budget (in ms) of each offer. If not set, the budget is derived from the
+ * deadline of a time based negotiation, and is 50 otherwise. Always capped by the time left before the
+ * deadline.</td>
+ * </tr>
+ * <tr>
+ * <td>parallelVoting</td>
+ * <td>Whether large voting rounds are evaluated on all cores. Default is true.</td>
+ * </tr>
+ * <tr>
+ * <td>votePlanningMs</td>
+ * <td>Time budget (in ms) to choose the minPower and maxPower of each vote from the predicted acceptance of
+ * the opponents, see {@link VotePlanner}. 0 votes with minPower and maxPower for every bid. Always capped by the
+ * time left before the deadline. Default is 0.</td>
+ * </tr>
+ * <tr>
+ * <td>seed</td>
+ * <td>Seed of all randomness of the party, to make runs reproducible. Default is a random seed.</td>
+ * </tr>
  * </table>
  */
 public class Group17_Main extends DefaultParty {
@@ -58,20 +170,91 @@ public class Group17_Main extends DefaultParty {
 	public static final double END_THRESHOLD = 0.6;
 	private PartyId me;
 	protected ProfileInterface profileint;
+
+	// Our profile, and everything computed from it, shared with the parties with the same profile
+	private LinearAdditive profile;
+	private ProfileCache.Entry cachedProfile;
 	private Progress progress;
 	private Votes lastvotes;
 	private String protocol;
-	private BidsWithUtility bidsWithUtility;
-	private BigDecimal maxRange;
+
+	// The bids of the first rounds, computed in the background and shared with parties with the same profile
+	private CompletableFuture<OpeningBids> openingBids;
 
 	// Variable indicating how many rounds random very high valued bids should be placed.
 	private final int firstBestBids = 5;
 
+	// Number of offers we made, counts the rounds also if the progress is not round based
+	private int offerCount = 0;
+
+	// Latency of our offers, to keep headroom before the deadline
+	private final LatencyTracker offerLatency = new LatencyTracker();
+
+	// The headroom before the deadline is this many times the latency of an offer and a training step
+	private static final double HEADROOM_FACTOR = 3;
+	private static final long MIN_HEADROOM_MS = 50;
+
 	private int minPower;
 	private int maxPower;
 	private int myPower;
 
-	private final Map<PartyId, LinearAdditive> opponentModelMap = new HashMap<>();
+	private TrainingParameters trainingParameters = TrainingParameters.DEFAULT;
+
+	private static final double DEFAULT_TRAINING_TOLERANCE = 0.005;
+
+	// Shared graph for all opponent models, only used if the sharedGraph parameter is set
+	private boolean sharedGraph;
+	private TFMultiOpponentUtilityModel sharedOpponentModel;
+
+	// Set once the opponent models are closed, after which no new models are created. Guarded by this.
+	private boolean opponentModelsClosed;
+	private UtilityOfferStringToIntOptionsMapper sharedMapper;
+
+	// Initial number of opponent slots of the shared graph
+	private static final int SHARED_GRAPH_CAPACITY = 8;
+
+	// Trains and publishes the opponent models
+	private OpponentModelTrainer opponentModelTrainer;
+	private long maxModelWaitMs;
+
+	private static final long DEFAULT_MAX_MODEL_WAIT_MS = 100;
+
+	// Source of randomness of the bid generation
+	private Sampler sampler;
+
+	// Seed of the replay buffers of the opponent models, combined with the name of the opponent
+	private long opponentSeed;
+
+	// Precomputed bid generation data of our profile
+	private BidGeneration.DrawPlan drawPlan;
+
+	// Evaluates the bids we vote on
+	private VoteEvaluator voteEvaluator;
+
+	// Plans the powers of our votes, only set if the votePlanningMs parameter is above 0
+	private VotePlanner votePlanner;
+	private long votePlanningMs;
+
+	// Distances of the opponent models to our profile, kept up to date between turns
+	private CoalitionTracker coalitionTracker;
+
+	// Generator on int[] bids, only set if the primitiveBidGeneration parameter is set
+	private PrimitiveBidGenerator primitiveBidGenerator;
+
+	// Generator of candidate bids, only set if the candidateBids parameter is above 1
+	private CandidateBidGenerator candidateBidGenerator;
+	private int candidateBids;
+	private BidObjective.Factory bidObjective;
+
+	// Anytime bidding, and its budget per offer if set by the bidBudgetMs parameter
+	private boolean anytimeBidding;
+	private long bidBudgetMs;
+
+	private static final long DEFAULT_BID_BUDGET_MS = 50;
+
+	// With a time deadline, the fraction of the negotiation (and at most of the remaining time) an offer may take
+	private static final double BID_BUDGET_FRACTION = 0.01;
+
 	private Map<PartyId, Integer> powers;
 
 	public Group17_Main() {
@@ -92,11 +275,14 @@ public class Group17_Main extends DefaultParty {
 				this.progress = settings.getProgress();
 				this.protocol = settings.getProtocol().getURI().getPath();
 
-				LinearAdditiveUtilitySpace space = (LinearAdditiveUtilitySpace) this.profileint.getProfile();
-				this.bidsWithUtility = new BidsWithUtility(space);
+				this.cachedProfile = ProfileCache.get(settings.getProfile().getURI(),
+						(LinearAdditiveUtilitySpace) this.profileint.getProfile());
+				LinearAdditiveUtilitySpace space = cachedProfile.getSpace();
+				this.profile = space;
+				this.openingBids = cachedProfile.getOpeningBids(firstBestBids + 1);
 
-				Interval range = bidsWithUtility.getRange();
-				this.maxRange = range.getMax();
+				// Unknown until the first Voting, a bid generated before it targets parties of power 1
+				this.powers = Collections.emptyMap();
 
 				Object val = settings.getParameters().get("minPower");
 				this.minPower = (val instanceof Integer) ? (Integer) val : DEFAULT_MIN_POWER;
@@ -109,26 +295,133 @@ public class Group17_Main extends DefaultParty {
 				myPower = (val instanceof Integer) ? (Integer) val
 						: 1;
 
+				val = settings.getParameters().get("replayBufferSize");
+				int replayBufferSize = (val instanceof Integer) ? (Integer) val
+						: ReplayBuffer.UNBOUNDED;
+
+				val = settings.getParameters().get("replayPolicy");
+				ReplayBuffer.SamplingPolicy replayPolicy = (val instanceof String)
+						? ReplayBuffer.SamplingPolicy.valueOf(((String) val).toUpperCase())
+						: ReplayBuffer.SamplingPolicy.RECENT;
+
+				val = settings.getParameters().get("backend");
+				TrainingParameters.Backend backend = (val instanceof String)
+						? TrainingParameters.Backend.valueOf(((String) val).toUpperCase())
+						: TrainingParameters.Backend.TENSORFLOW;
+
+				val = settings.getParameters().get("trainingMode");
+				TrainingParameters.TrainingMode trainingMode = (val instanceof String)
+						? TrainingParameters.TrainingMode.valueOf(((String) val).toUpperCase())
+						: TrainingParameters.DEFAULT.getMode();
+
+				val = settings.getParameters().get("batchSize");
+				int batchSize = (val instanceof Integer) ? (Integer) val
+						: TrainingParameters.DEFAULT.getBatchSize();
+
+				val = settings.getParameters().get("learningRate");
+				float learningRate = (val instanceof Number) ? ((Number) val).floatValue()
+						: TFUtilityModel.LEARNING_RATE;
+
+				val = settings.getParameters().get("maxEpochs");
+				int maxEpochs = (val instanceof Integer) ? (Integer) val : TFUtilityModel.EPOCHS;
+
+				val = settings.getParameters().get("trainingTolerance");
+				double trainingTolerance = (val instanceof Number) ? ((Number) val).doubleValue()
+						: DEFAULT_TRAINING_TOLERANCE;
+
+				val = settings.getParameters().get("trainingBudgetMs");
+				long trainingBudgetMs = (val instanceof Number) ? ((Number) val).longValue() : 0;
+
+				this.trainingParameters = TrainingParameters.DEFAULT
+						.withBackend(backend)
+						.withMode(trainingMode)
+						.withBatchSize(batchSize)
+						.withReplayBuffer(replayBufferSize, replayPolicy)
+						.withLearningRate(learningRate)
+						.withMaxEpochs(maxEpochs)
+						.withEarlyStopping(trainingTolerance, trainingBudgetMs);
+
+				val = settings.getParameters().get("sharedGraph");
+				this.sharedGraph = Boolean.TRUE.equals(val) && backend == TrainingParameters.Backend.TENSORFLOW;
+
+				val = settings.getParameters().get("asyncTraining");
+				boolean asyncTraining = Boolean.TRUE.equals(val);
+
+				val = settings.getParameters().get("maxModelWaitMs");
+				this.maxModelWaitMs = (val instanceof Number) ? ((Number) val).longValue()
+						: DEFAULT_MAX_MODEL_WAIT_MS;
+
+				val = settings.getParameters().get("trainingThreads");
+				int trainingThreads = (val instanceof Integer) ? (Integer) val
+						: Runtime.getRuntime().availableProcessors();
+
+				Domain domain = space.getDomain();
+
+				this.drawPlan = cachedProfile.getDrawPlan();
+
+				UtilityOfferStringToIntOptionsMapper mapper = cachedProfile.getMapper();
+				this.coalitionTracker = new CoalitionTracker(cachedProfile.getTable(), mapper);
+
+				val = settings.getParameters().get("parallelVoting");
+				this.voteEvaluator = new VoteEvaluator(cachedProfile.getTable(), mapper, !Boolean.FALSE.equals(val));
+
+				val = settings.getParameters().get("seed");
+				if (val instanceof Number) {
+					this.sampler = new Sampler(((Number) val).longValue());
+					this.opponentSeed = ((Number) val).longValue();
+				} else {
+					this.sampler = new Sampler();
+					this.opponentSeed = sampler.nextLong();
+				}
+
+				val = settings.getParameters().get("votePlanningMs");
+				this.votePlanningMs = (val instanceof Number) ? ((Number) val).longValue() : 0;
+				if (votePlanningMs > 0) {
+					this.votePlanner = new VotePlanner(minPower, maxPower, myPower, sampler.split());
+				}
+
+				val = settings.getParameters().get("candidateBids");
+				this.candidateBids = (val instanceof Integer) ? (Integer) val : 1;
+
+				val = settings.getParameters().get("bidObjective");
+				this.bidObjective = "powerWeightedAcceptance".equals(val) ? BidObjective.POWER_WEIGHTED_ACCEPTANCE
+						: BidObjective.SUMMED_UTILITY;
+
+				val = settings.getParameters().get("anytimeBidding");
+				this.anytimeBidding = Boolean.TRUE.equals(val);
+
+				val = settings.getParameters().get("bidBudgetMs");
+				this.bidBudgetMs = (val instanceof Number) ? ((Number) val).longValue() : 0;
+
+				val = settings.getParameters().get("primitiveBidGeneration");
+				if (Boolean.TRUE.equals(val) || candidateBids > 1 || anytimeBidding) {
+					this.primitiveBidGenerator = cachedProfile.getPrimitiveBidGenerator(sampler.split());
+				}
+
+				if (candidateBids > 1 || anytimeBidding) {
+					val = settings.getParameters().get("parallelCandidates");
+					this.candidateBidGenerator = new CandidateBidGenerator(primitiveBidGenerator, sampler.split(), !Boolean.FALSE.equals(val));
+				}
+
+				synchronized (this) {
+					this.opponentModelsClosed = false;
+					this.opponentModelTrainer = new OpponentModelTrainer(actor -> createOpponentModel(domain, actor),
+							asyncTraining, trainingThreads, sharedGraph, getReporter());
+				}
 
 			} else if (info instanceof ActionDone) {
 				Action otheract = ((ActionDone) info).getAction();
 
 				// Train the opponent models when a new Offer or Votes arrive.
-				if (otheract instanceof Offer || otheract instanceof Votes) {
-					PartyId actor = otheract.getActor();
-
-					// initialize opponent model if not yet created
-					opponentModelMap.putIfAbsent(actor, new TFLinearAdditiveOpponentModel(this.profileint.getProfile().getDomain()));
-
-					// Update opponent with action
-					TFLinearAdditiveOpponentModel opponentModel = (TFLinearAdditiveOpponentModel) opponentModelMap.get(actor);
-					TFLinearAdditiveOpponentModel updatedOpponentModel = opponentModel.with(otheract, progress);
-					opponentModelMap.put(actor, updatedOpponentModel);
+				// Training that can't be used before the deadline anymore is skipped.
+				if ((otheract instanceof Offer || otheract instanceof Votes) && computeSafeRemainingMs() > 0) {
+					opponentModelTrainer.submit(otheract, progress);
 				}
 			} else if (info instanceof YourTurn) {
 				makeOffer();
 			} else if (info instanceof Finished) {
 				getReporter().log(Level.INFO, "Final outcome:" + info);
+				closeOpponentModels();
 			} else if (info instanceof Voting) {
 
 				this.powers = ((Voting) info).getPowers();
@@ -145,6 +438,65 @@ public class Group17_Main extends DefaultParty {
 		updateRound(info);
 	}
 
+	@Override
+	public void terminate() {
+		closeOpponentModels();
+		super.terminate();
+	}
+
+	/**
+	 * Create an untrained opponent model.
+	 * @param domain The domain of the negotiation.
+	 * @param actor The opponent, its name and the seed parameter seed the replay buffer so the training is reproducible.
+	 * @return The opponent model.
+	 */
+	private synchronized TFLinearAdditiveOpponentModel createOpponentModel(Domain domain, PartyId actor) {
+		if (opponentModelsClosed) {
+			throw new IllegalStateException("The opponent models are closed");
+		}
+
+		Random random = new Random(31 * opponentSeed + actor.getName().hashCode());
+
+		if (!sharedGraph) {
+			return new TFLinearAdditiveOpponentModel(domain, trainingParameters, random);
+		}
+
+		if (sharedOpponentModel == null) {
+			sharedMapper = UtilityOfferStringToIntOptionsMapper.forDomain(domain);
+			sharedOpponentModel = new TFMultiOpponentUtilityModel(sharedMapper.issuesOptions, SHARED_GRAPH_CAPACITY, trainingParameters);
+		}
+
+		return new TFLinearAdditiveOpponentModel(domain, sharedMapper, sharedOpponentModel.addOpponent(), trainingParameters, random);
+	}
+
+	/**
+	 * Release the native resources of all opponent models, and forget them.
+	 *
+	 * The trainer is closed without holding the lock of the party, since a running training step may be waiting
+	 * for it in {@link #createOpponentModel}.
+	 */
+	private void closeOpponentModels() {
+		OpponentModelTrainer trainer;
+
+		synchronized (this) {
+			opponentModelsClosed = true;
+
+			trainer = opponentModelTrainer;
+			opponentModelTrainer = null;
+		}
+
+		if (trainer != null) {
+			trainer.close();
+		}
+
+		synchronized (this) {
+			if (sharedOpponentModel != null) {
+				sharedOpponentModel.close();
+				sharedOpponentModel = null;
+			}
+		}
+	}
+
 	@Override
 	public Capabilities getCapabilities() {
 		return new Capabilities(
@@ -173,7 +525,7 @@ public class Group17_Main extends DefaultParty {
 		} else {
 			return;
 		}
-		// if we get here, round must be increased.
+		// if we get here, round must be increased. Time based progress follows the clock instead.
 		if (progress instanceof ProgressRounds) {
 			progress = ((ProgressRounds) progress).advance();
 		}
@@ -184,71 +536,144 @@ public class Group17_Main extends DefaultParty {
 	 * send our next offer
 	 */
 	private void makeOffer() throws IOException {
+		long start = System.nanoTime();
 		Action action;
-		LinearAdditive profile;
 
-		try {
-			profile = (LinearAdditive) profileint.getProfile();
-		} catch (IOException e) {
-			throw new IllegalStateException(e);
-		}
-		
-		int round = ((ProgressRounds) progress).getCurrentRound();
-		Bid bid;
+		int round = offerCount;
+		Bid bid = null;
 
 		if (round <= firstBestBids) {
-			// Generate random good bid for first few rounds
+			// Offer a very good bid for first few rounds
+			bid = getOpeningBid(round);
+		}
 
-			Interval firstInterval = new Interval(maxRange.multiply(BigDecimal.valueOf(0.9)), maxRange);
-			
-			if (this.bidsWithUtility.getBids(firstInterval).size().compareTo(BigInteger.valueOf(round)) >= 0) {
-				bid = this.bidsWithUtility.getBids(firstInterval).get(round);
-			} else {
-				bid = this.bidsWithUtility.getExtremeBid(true);
-			}
-		} else {
+		if (bid == null) {
 			// Generate bid using opponent model
 
 			// Compute threshold to use this round
 			double roundThreshold = computeRoundThreshold();
 
-			BidGeneration bidGeneration = new BidGeneration(profile, powers, minPower - myPower);
-			bid = bidGeneration.generateBid(opponentModelMap, roundThreshold);
+			BidGeneration bidGeneration = new BidGeneration(profile, powers, minPower - myPower, drawPlan, coalitionTracker, sampler,
+					primitiveBidGenerator);
+			Map<PartyId, LinearAdditive> opponentModels = opponentModelTrainer.getModels(
+					Math.min(maxModelWaitMs, computeSafeRemainingMs()));
+
+			if (anytimeBidding) {
+				// Offer the best candidate that is found within the budget
+				bid = bidGeneration.generateBestBidsWithin(opponentModels, roundThreshold, candidateBidGenerator,
+						computeBidBudgetMs(), 1, bidObjective).get(0);
+			} else if (candidateBidGenerator != null) {
+				// Offer the best of a batch of candidates
+				bid = bidGeneration.generateBestBids(opponentModels, roundThreshold, candidateBidGenerator, candidateBids, 1,
+						bidObjective).get(0);
+			} else {
+				bid = bidGeneration.generateBid(opponentModels, roundThreshold);
+			}
 
 		}
 
 		action = new Offer(me, bid);
 		getConnection().send(action);
+
+		offerCount++;
+		offerLatency.recordSince(start);
 	}
 
 	/**
-	 * Compute round threshold by interpolating between start and end thresholds.
-	 * @return Interpolated threshold
+	 * @param round The index of our offer.
+	 * @return The opening bid of the round, or null if the opening bids could not be computed.
 	 */
-	private double computeRoundThreshold() {
-		ProgressRounds progressRounds = ((ProgressRounds) progress);
+	private Bid getOpeningBid(int round) {
+		try {
+			return openingBids.join().getBid(round);
+		} catch (CompletionException | CancellationException e) {
+			// Fall back to the normal bid generation, and compute the opening bids again for the next round
+			getReporter().log(Level.WARNING, "Failed to compute the opening bids", e);
+			openingBids = cachedProfile.getOpeningBids(firstBestBids + 1);
+			return null;
+		}
+	}
 
-		double progressDouble = (double) progressRounds.getCurrentRound() / (double) progressRounds.getTotalRounds();
-		double roundThreshold = progressDouble * END_THRESHOLD + (1 - progressDouble) * START_THRESHOLD;
+	/**
+	 * Compute the time budget of an offer with anytime bidding.
+	 * @return The bidBudgetMs parameter if set, otherwise a fraction of the duration of a time based negotiation,
+	 *         or the default budget. Never more than the time until the deadline minus the headroom.
+	 */
+	long computeBidBudgetMs() {
+		long safeRemaining = computeSafeRemainingMs();
 
-		return roundThreshold;
+		if (bidBudgetMs > 0) {
+			return Math.min(bidBudgetMs, safeRemaining);
+		}
+
+		if (progress instanceof ProgressTime) {
+			long duration = ((ProgressTime) progress).getDuration();
+
+			return Math.max(0, Math.min((long) (BID_BUDGET_FRACTION * duration), safeRemaining));
+		}
+
+		return Math.min(DEFAULT_BID_BUDGET_MS, safeRemaining);
 	}
 
 	/**
-	 * @param bid the bid to check
-	 * @return true iff bid is good for us.
+	 * Compute the headroom to keep before the deadline, so our last offer and the training it depends on
+	 * finish in time.
+	 * @return The headroom in ms, from the measured latencies of offers and training steps.
 	 */
-	private boolean isGood(Bid bid, double t) {
-		if (bid == null)
-			return false;
-		Profile profile;
-		try {
-			profile = profileint.getProfile();
-		} catch (IOException e) {
-			throw new IllegalStateException(e);
+	private long computeHeadroomMs() {
+		double trainingMs = opponentModelTrainer == null ? 0 : opponentModelTrainer.getTrainingLatency().getAverageMs();
+
+		return MIN_HEADROOM_MS + (long) (HEADROOM_FACTOR * (offerLatency.getAverageMs() + trainingMs));
+	}
+
+	/**
+	 * @return The time in ms until the deadline minus the headroom, at least 0. {@link Long#MAX_VALUE} if the
+	 *         progress has no termination time.
+	 */
+	long computeSafeRemainingMs() {
+		Date terminationTime = progress.getTerminationTime();
+
+		if (terminationTime == null) {
+			return Long.MAX_VALUE;
 		}
-		
-		return ((UtilitySpace) profile).getUtility(bid).doubleValue() >= t;
+
+		long remaining = terminationTime.getTime() - System.currentTimeMillis();
+
+		return Math.max(0, remaining - computeHeadroomMs());
+	}
+
+	/**
+	 * Compute the progress of the negotiation.
+	 * @return The fraction of the rounds that passed, or with a time deadline the fraction of the time until the
+	 *         deadline minus the headroom that passed, so we concede fully while there is time to reach agreement.
+	 */
+	private double computeProgress() {
+		if (progress instanceof ProgressRounds) {
+			ProgressRounds progressRounds = (ProgressRounds) progress;
+
+			return (double) progressRounds.getCurrentRound() / (double) progressRounds.getTotalRounds();
+		}
+
+		if (progress instanceof ProgressTime) {
+			ProgressTime progressTime = (ProgressTime) progress;
+			long elapsed = System.currentTimeMillis() - progressTime.getStart().getTime();
+			long available = progressTime.getDuration() - computeHeadroomMs();
+
+			return available <= 0 ? 1 : Math.min(1, Math.max(0, (double) elapsed / available));
+		}
+
+		return progress.get(System.currentTimeMillis());
+	}
+
+	/**
+	 * Compute round threshold by interpolating between start and end thresholds.
+	 * @return Interpolated threshold
+	 */
+	private double computeRoundThreshold() {
+		double progressDouble = computeProgress();
+		double roundThreshold = progressDouble * END_THRESHOLD + (1 - progressDouble) * START_THRESHOLD;
+
+		return roundThreshold;
 	}
 
 	/**
@@ -261,11 +686,55 @@ public class Group17_Main extends DefaultParty {
 		double roundThreshold = 0.9 * computeRoundThreshold();
 
 
-		Set<Vote> votes = voting.getBids().stream().distinct()
-				.filter(offer -> isGood(offer.getBid(), roundThreshold))
-				.map(offer -> new Vote(me, offer.getBid(), minPower, maxPower))
+		List<Bid> bids = voting.getBids().stream().map(Offer::getBid).distinct()
+				.collect(Collectors.toList());
+
+		List<Bid> goodBids = voteEvaluator.filterGood(bids, roundThreshold);
+
+		if (votePlanner != null) {
+			return new Votes(me, planVotes(goodBids));
+		}
+
+		Set<Vote> votes = goodBids.stream()
+				.map(bid -> new Vote(me, bid, minPower, maxPower))
 				.collect(Collectors.toSet());
 		return new Votes(me, votes);
 	}
 
+	/**
+	 * Choose the powers of the votes from the predicted acceptance of the opponents.
+	 * @param bids The bids to vote for.
+	 * @return The votes.
+	 */
+	private Set<Vote> planVotes(List<Bid> bids) {
+		coalitionTracker.update(opponentModelTrainer.getModels(0));
+		Map<PartyId, UtilityTable> tables = coalitionTracker.getTables();
+
+		List<PartyId> opponents = new ArrayList<>(tables.keySet());
+		int[] opponentPowers = opponents.stream().mapToInt(party -> powers.getOrDefault(party, 1)).toArray();
+
+		double[] myUtilities = new double[bids.size()];
+		double[][] acceptance = new double[bids.size()][opponents.size()];
+
+		for (int b = 0; b < bids.size(); b++) {
+			myUtilities[b] = voteEvaluator.getUtility(bids.get(b));
+
+			// The predicted utility of an opponent is its probability to accept, like the models are trained
+			for (int j = 0; j < opponents.size(); j++) {
+				double utility = tables.get(opponents.get(j)).getUtility(bids.get(b), coalitionTracker.getMapper());
+				acceptance[b][j] = Math.min(1, Math.max(0, utility));
+			}
+		}
+
+		VotePlanner.Plan plan = votePlanner.plan(myUtilities, acceptance, opponentPowers,
+				Math.min(votePlanningMs, computeSafeRemainingMs()));
+
+		Set<Vote> votes = new HashSet<>();
+		for (int b = 0; b < bids.size(); b++) {
+			votes.add(new Vote(me, bids.get(b), plan.getMinPower(b), plan.getMaxPower(b)));
+		}
+
+		return votes;
+	}
+
 }
@@ -3,12 +3,16 @@ package ai2020.group17;
 import geniusweb.issuevalue.Domain;
 import geniusweb.issuevalue.Value;
 import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.profile.utilityspace.ValueSetUtilities;
 import org.tensorflow.Operand;
+import org.tensorflow.Session;
+import org.tensorflow.Tensor;
 import org.tensorflow.op.Ops;
+import org.tensorflow.types.TFloat32;
 import org.tensorflow.types.family.TType;
 
-import java.util.ArrayList;
-import java.util.Random;
+import java.util.Map;
+
 
 public class Helper {
 
@@ -32,6 +36,30 @@ public class Helper {
                 clipValueMax), t)));
     }
 
+    /**
+     * Close all given tensors, releasing their native memory.
+     * @param tensors The tensors to close.
+     */
+    public static void closeAll(Iterable<? extends Tensor<?>> tensors) {
+        for (Tensor<?> tensor : tensors) {
+            tensor.close();
+        }
+    }
+
+    /**
+     * Run a training step, and add its loss to the epoch control if it tracks the loss.
+     * @param epochs The epoch control of the current call to train.
+     * @param runner The runner with the gradient descent targets and the fed inputs.
+     * @param stepLoss The scalar loss of the step.
+     */
+    public static void runTrainingStep(EpochControl epochs, Session.Runner runner, Operand<TFloat32> stepLoss) {
+        epochs.step(runner::run, () -> {
+            try (Tensor<?> result = runner.fetch(stepLoss).run().get(0)) {
+                return result.rawData().asFloats().getFloat(0);
+            }
+        });
+    }
+
     /**
      * Method to get a float array of n repeating values.
      * @param number The value to repeat.
@@ -62,13 +90,20 @@ public class Helper {
 
         Domain domain = space1.getDomain();
 
+        Map<String, ValueSetUtilities> utilities1 = space1.getUtilities();
+        Map<String, ValueSetUtilities> utilities2 = space2.getUtilities();
+
         for (String issue: domain.getIssues()) {
             double weight = space1.getWeight(issue).doubleValue();
 
+            ValueSetUtilities issueUtilities1 = utilities1.get(issue);
+            ValueSetUtilities issueUtilities2 = utilities2.get(issue);
+
             double issueDist = 0.0;
 
             for (Value value: domain.getValues(issue)) {
-                issueDist += Math.pow(space1.getUtilities().get(issue).getUtility(value).doubleValue() - space2.getUtilities().get(issue).getUtility(value).doubleValue(), 2);
+                double diff = issueUtilities1.getUtility(value).doubleValue() - issueUtilities2.getUtility(value).doubleValue();
+                issueDist += diff * diff;
             }
 
             dist += weight * issueDist;
@@ -77,26 +112,28 @@ public class Helper {
         return dist;
     }
 
-
     /**
-     * Method to draw an index from a discrete distribution.
-     * @param distribution The array defining the discrete distribution.
-     *                     Does not have to be normalized.
-     * @return An index drawn from the {@code distribution}
+     * Distance function between two utility tables with the same indices,
+     * equal to {@link #distance(LinearAdditive, LinearAdditive)} of the spaces they represent.
+     *
+     * @param table1 Utility table 1
+     * @param table2 Utility table 2
+     * @return Squared distance between the two utility tables
      */
-    public static int drawFromDiscreteDist(ArrayList<Double> distribution) {
-        double total =  distribution.stream().mapToDouble(x->x).sum();
+    public static double distance(UtilityTable table1, UtilityTable table2) {
+        double dist = 0;
 
-        Random random = new Random();
+        for (int i = 0; i < table1.getIssueCount(); i++) {
+            double issueDist = 0.0;
 
-        double cumulative = random.nextDouble() * total;
+            for (int j = 0; j < table1.utilities[i].length; j++) {
+                double diff = table1.getUtility(i, j) - table2.getUtility(i, j);
+                issueDist += diff * diff;
+            }
 
-        int i = 0;
-        do  {
-            cumulative -= distribution.get(i);
-            i++;
-        } while (i < distribution.size() && cumulative > 0);
+            dist += table1.getWeight(i) * issueDist;
+        }
 
-        return i - 1;
+        return dist;
     }
 }
@@ -0,0 +1,57 @@
+package ai2020.group17;
+
+import org.tensorflow.Tensor;
+import org.tensorflow.ndarray.Shape;
+import org.tensorflow.ndarray.buffer.DataBuffers;
+import org.tensorflow.ndarray.buffer.IntDataBuffer;
+import org.tensorflow.types.TInt32;
+
+/**
+ * Preallocated native int tensor of indices that is fed again on every run, like the float {@link InputBuffer}.
+ * Owned by a single model, not thread safe.
+ */
+public class IndexInputBuffer implements AutoCloseable {
+
+    private final Tensor<TInt32> tensor;
+
+    // The values that are copied into the tensor, and a buffer around them
+    private final int[] values;
+    private final IntDataBuffer valuesBuffer;
+
+    // The ndarray of the tensor
+    private final TInt32 data;
+
+    /**
+     * Allocate a tensor of zeros.
+     * @param shape The shape of the tensor.
+     */
+    public IndexInputBuffer(Shape shape) {
+        values = new int[(int) shape.size()];
+        valuesBuffer = DataBuffers.of(values, true, false);
+
+        tensor = TInt32.tensorOf(shape, valuesBuffer);
+        data = tensor.data();
+    }
+
+    /**
+     * @return The tensor, with the values written since the last call.
+     */
+    public Tensor<TInt32> getTensor() {
+        data.write(valuesBuffer);
+
+        return tensor;
+    }
+
+    /**
+     * @param index The index in the flattened tensor.
+     * @param value The value to write.
+     */
+    public void setInt(int index, int value) {
+        values[index] = value;
+    }
+
+    @Override
+    public void close() {
+        tensor.close();
+    }
+}
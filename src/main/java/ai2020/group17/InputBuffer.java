@@ -0,0 +1,142 @@
+package ai2020.group17;
+
+import org.tensorflow.Tensor;
+import org.tensorflow.ndarray.Shape;
+import org.tensorflow.ndarray.buffer.DataBuffers;
+import org.tensorflow.ndarray.buffer.FloatDataBuffer;
+import org.tensorflow.types.TFloat32;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Preallocated native float tensor that is fed again on every run, so feeding allocates neither java nor
+ * native memory. The values are written to a preallocated java array, which is copied into the tensor by
+ * {@link #getTensor()}; the native memory of a tensor is read only through {@link Tensor#rawData()}.
+ * Owned by a single model, not thread safe.
+ */
+public class InputBuffer implements AutoCloseable {
+
+    private final Tensor<TFloat32> tensor;
+
+    // The values that are copied into the tensor, and a buffer around them
+    private final float[] values;
+    private final FloatDataBuffer valuesBuffer;
+
+    // The ndarray of the tensor
+    private final TFloat32 data;
+
+    /**
+     * Allocate a tensor of zeros.
+     * @param shape The shape of the tensor.
+     */
+    public InputBuffer(Shape shape) {
+        values = new float[(int) shape.size()];
+        valuesBuffer = DataBuffers.of(values, true, false);
+
+        tensor = TFloat32.tensorOf(shape, valuesBuffer);
+        data = tensor.data();
+    }
+
+    /**
+     * @return The tensor, with the values written since the last call.
+     */
+    public Tensor<TFloat32> getTensor() {
+        data.write(valuesBuffer);
+
+        return tensor;
+    }
+
+    /**
+     * @param index The index in the flattened tensor.
+     * @param value The value to write.
+     */
+    public void setFloat(int index, float value) {
+        values[index] = value;
+    }
+
+    @Override
+    public void close() {
+        tensor.close();
+    }
+
+    /**
+     * Batch buffers of a few sizes, e.g. for the full batches and the last, smaller batch of a training step,
+     * and the chunks of a batched prediction. A buffer of a new size replaces the least recently used buffer.
+     * @param <B> The type of buffer.
+     */
+    public static class Pool<B extends AutoCloseable> implements AutoCloseable {
+
+        // Number of buffer sizes that are kept
+        static final int SIZES = 4;
+
+        // Allocates a buffer with the given number of rows
+        private final IntFunction<B> allocate;
+
+        private final List<B> buffers = new ArrayList<>(Collections.nCopies(SIZES, null));
+        private final int[] rows = new int[SIZES];
+
+        // When each buffer was used last, in calls to get
+        private final long[] lastUsed = new long[SIZES];
+        private long uses = 0;
+
+        /**
+         * @param allocate Allocates a buffer with the given number of rows.
+         */
+        public Pool(IntFunction<B> allocate) {
+            this.allocate = allocate;
+        }
+
+        /**
+         * @param nRows The number of rows of the batch.
+         * @return A buffer for the batch, with the values of its previous use.
+         */
+        public B get(int nRows) {
+            uses++;
+
+            int replaced = 0;
+            for (int i = 0; i < SIZES; i++) {
+                if (buffers.get(i) != null && rows[i] == nRows) {
+                    lastUsed[i] = uses;
+                    return buffers.get(i);
+                }
+
+                if (lastUsed[i] < lastUsed[replaced]) {
+                    replaced = i;
+                }
+            }
+
+            close(replaced);
+
+            B buffer = allocate.apply(nRows);
+            buffers.set(replaced, buffer);
+            rows[replaced] = nRows;
+            lastUsed[replaced] = uses;
+
+            return buffer;
+        }
+
+        private void close(int index) {
+            B buffer = buffers.get(index);
+
+            if (buffer != null) {
+                try {
+                    buffer.close();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+
+                buffers.set(index, null);
+            }
+        }
+
+        @Override
+        public void close() {
+            for (int i = 0; i < SIZES; i++) {
+                close(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package ai2020.group17;
+
+import java.util.List;
+
+/**
+ * Pure java implementation of the {@link TFUtilityModel}.
+ *
+ * It computes the same forward pass, loss ({@code elu(square(actual - predicted))}) and gradients, where
+ * the clipping of the option utilities lets the gradient pass through unchanged
+ * (see {@link Helper#clipByValuePreserveGradient}). Everything is kept in primitive float arrays,
+ * so no native libraries, graphs or sessions are needed.
+ */
+public class JavaUtilityModel implements UtilityModel {
+
+    // The utility weight of each option of each issue, before clipping
+    private final float[][] issueWeights;
+
+    // The relative weights between the issues, before normalization
+    private final float[] weights;
+
+    // Accumulated gradients of a (mini-)batch
+    private final float[][] issueWeightGradients;
+    private final float[] weightGradients;
+
+    private final TrainingParameters trainingParameters;
+
+    /**
+     * Create model.
+     * @param issuesOptions The shape of the domain, see {@link TFUtilityModel#TFUtilityModel(int[])}.
+     */
+    public JavaUtilityModel(int[] issuesOptions) {
+        this(issuesOptions, TrainingParameters.DEFAULT);
+    }
+
+    /**
+     * Create model.
+     * @param issuesOptions The shape of the domain, see {@link TFUtilityModel#TFUtilityModel(int[])}.
+     * @param trainingParameters How the model should be trained.
+     */
+    public JavaUtilityModel(int[] issuesOptions, TrainingParameters trainingParameters) {
+        this.trainingParameters = trainingParameters;
+
+        issueWeights = new float[issuesOptions.length][];
+        issueWeightGradients = new float[issuesOptions.length][];
+
+        for (int i = 0; i < issuesOptions.length; i++) {
+            issueWeights[i] = Helper.repeat(TFUtilityModel.INITIAL_ISSUE_WEIGHT, issuesOptions[i]);
+            issueWeightGradients[i] = new float[issuesOptions[i]];
+        }
+
+        weights = Helper.repeat(TFUtilityModel.INITIAL_WEIGHT, issuesOptions.length);
+        weightGradients = new float[issuesOptions.length];
+    }
+
+    @Override
+    public void train(List<TFUtilityModel.TrainingExample> trainingExamples) {
+        if (trainingExamples.isEmpty()) {
+            return;
+        }
+
+        // Per example training is mini-batch training with batches of a single example
+        int batchSize;
+        switch (trainingParameters.getMode()) {
+            case PER_EXAMPLE:
+                batchSize = 1;
+                break;
+            case MINI_BATCH:
+                batchSize = trainingParameters.getBatchSize() > 0 ? trainingParameters.getBatchSize() : trainingExamples.size();
+                break;
+            default:
+                throw new IllegalStateException("Unknown training mode " + trainingParameters.getMode());
+        }
+
+        EpochControl epochs = new EpochControl(trainingParameters);
+        do {
+            for (int from = 0; from < trainingExamples.size(); from += batchSize) {
+                int to = Math.min(from + batchSize, trainingExamples.size());
+
+                for (int i = from; i < to; i++) {
+                    epochs.addLoss(accumulateGradients(trainingExamples.get(i)));
+                }
+
+                applyGradients(trainingParameters.getLearningRate());
+            }
+        } while (epochs.nextEpoch());
+    }
+
+    /**
+     * Add the gradients of the loss of a single example to the accumulated gradients.
+     * @param example The training example.
+     * @return The loss of the example.
+     */
+    private float accumulateGradients(TFUtilityModel.TrainingExample example) {
+        float actual = example.accepted ? 1.0f : 0.0f;
+
+        float sumOfWeights = sumOfWeights();
+        float predicted = predict(example.options, sumOfWeights);
+
+        // d/dPredicted of elu(square(actual - predicted)), the square is never negative so elu' is 1
+        float lossGradient = -2.0f * (actual - predicted);
+
+        for (int i = 0; i < weights.length; i++) {
+            int option = example.options[i];
+
+            // The clipping preserves the gradient, so the gradient of the clipped utility is used as is
+            issueWeightGradients[i][option] += lossGradient * weights[i] / sumOfWeights;
+
+            // d/dWeight of sum(weights * clipped) / sum(weights)
+            weightGradients[i] += lossGradient * (clip(issueWeights[i][option]) - predicted) / sumOfWeights;
+        }
+
+        // elu(square(actual - predicted)), the square is never negative so the elu is the identity
+        return (actual - predicted) * (actual - predicted);
+    }
+
+    /**
+     * Apply a gradient descent step with the accumulated gradients, and reset them.
+     * @param alpha The learning rate.
+     */
+    private void applyGradients(float alpha) {
+        for (int i = 0; i < weights.length; i++) {
+            for (int j = 0; j < issueWeights[i].length; j++) {
+                issueWeights[i][j] -= alpha * issueWeightGradients[i][j];
+                issueWeightGradients[i][j] = 0;
+            }
+
+            weights[i] -= alpha * weightGradients[i];
+            weightGradients[i] = 0;
+        }
+    }
+
+    @Override
+    public float predict(int[] options) {
+        return predict(options, sumOfWeights());
+    }
+
+    // There is no per run overhead, so the bids are not chunked
+    @Override
+    public void predictBatch(int[][] bids, float[] predictions, int chunkSize) {
+        float sumOfWeights = sumOfWeights();
+
+        for (int i = 0; i < bids.length; i++) {
+            predictions[i] = predict(bids[i], sumOfWeights);
+        }
+    }
+
+    private float predict(int[] options, float sumOfWeights) {
+        float result = 0;
+
+        for (int i = 0; i < weights.length; i++) {
+            result += clip(issueWeights[i][options[i]]) * (weights[i] / sumOfWeights);
+        }
+
+        return result;
+    }
+
+    private float sumOfWeights() {
+        float sum = 0;
+
+        for (float weight : weights) {
+            sum += weight;
+        }
+
+        return sum;
+    }
+
+    // Clip the utility weights between 0 and 1
+    private static float clip(float value) {
+        return Math.min(Math.max(value, 0.0f), 1.0f);
+    }
+
+    @Override
+    public double[] computeWeights() {
+        float sumOfWeights = sumOfWeights();
+
+        double[] result = new double[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            result[i] = weights[i] / sumOfWeights;
+        }
+
+        return result;
+    }
+
+    @Override
+    public double[] computeIssueWeights(int issueIndex) {
+        double[] result = new double[issueWeights[issueIndex].length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = clip(issueWeights[issueIndex][i]);
+        }
+
+        return result;
+    }
+}
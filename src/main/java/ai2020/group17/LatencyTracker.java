@@ -0,0 +1,37 @@
+package ai2020.group17;
+
+/**
+ * Exponentially weighted moving average of the latency of a recurring step, like a training step or an offer.
+ * Used to keep enough headroom before a deadline. Thread safe, steps may be recorded from any thread.
+ */
+public class LatencyTracker {
+
+    // Weight of the most recent latency
+    static final double ALPHA = 0.2;
+
+    // The average latency in ms, NaN until the first latency is recorded
+    private double averageMs = Double.NaN;
+
+    /**
+     * Record the latency of a step.
+     * @param latencyMs The latency in ms.
+     */
+    public synchronized void record(double latencyMs) {
+        averageMs = Double.isNaN(averageMs) ? latencyMs : ALPHA * latencyMs + (1 - ALPHA) * averageMs;
+    }
+
+    /**
+     * Record the latency of a step that started at {@code startNanos}, and ends now.
+     * @param startNanos The {@link System#nanoTime()} at the start of the step.
+     */
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1e6);
+    }
+
+    /**
+     * @return The average latency in ms, 0 if no latency is recorded yet.
+     */
+    public synchronized double getAverageMs() {
+        return Double.isNaN(averageMs) ? 0 : averageMs;
+    }
+}
@@ -0,0 +1,74 @@
+package ai2020.group17;
+
+import geniusweb.bidspace.BidsWithUtility;
+import geniusweb.bidspace.Interval;
+import geniusweb.issuevalue.Bid;
+import tudelft.utilities.immutablelist.ImmutableList;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * The bids we offer in the opening rounds: the first bids of {@link BidsWithUtility} with at least
+ * {@link #MIN_RELATIVE_UTILITY} of our maximum utility, stored as int[] bids.
+ *
+ * Enumerating the bids is slow on large domains, so they are computed once per profile in the background
+ * and shared by all parties in the JVM with the same profile, see {@link ProfileCache.Entry#getOpeningBids(int)}.
+ * Immutable.
+ */
+public class OpeningBids {
+
+    // Fraction of our maximum utility the opening bids reach
+    static final double MIN_RELATIVE_UTILITY = 0.9;
+
+    private final UtilityOfferStringToIntOptionsMapper mapper;
+
+    // The opening bids in the order of BidsWithUtility
+    private final int[][] bids;
+
+    // The bid with our maximum utility, offered if there are not enough opening bids
+    private final int[] bestBid;
+
+    OpeningBids(UtilityOfferStringToIntOptionsMapper mapper, int[][] bids, int[] bestBid) {
+        this.mapper = mapper;
+        this.bids = bids;
+        this.bestBid = bestBid;
+    }
+
+    /**
+     * Compute the opening bids of a profile.
+     * @param bidsWithUtility The bids of our profile.
+     * @param mapper Mapper of the domain of our profile.
+     * @param count The maximum number of opening bids.
+     * @return The opening bids.
+     */
+    public static OpeningBids compute(BidsWithUtility bidsWithUtility, UtilityOfferStringToIntOptionsMapper mapper, int count) {
+        BigDecimal max = bidsWithUtility.getRange().getMax();
+        ImmutableList<Bid> window = bidsWithUtility.getBids(
+                new Interval(max.multiply(BigDecimal.valueOf(MIN_RELATIVE_UTILITY)), max));
+
+        int[][] bids = new int[window.size().min(BigInteger.valueOf(count)).intValue()][];
+        for (int i = 0; i < bids.length; i++) {
+            bids[i] = mapper.convertOptions(window.get(i).getIssueValues());
+        }
+
+        int[] bestBid = mapper.convertOptions(bidsWithUtility.getExtremeBid(true).getIssueValues());
+
+        return new OpeningBids(mapper, bids, bestBid);
+    }
+
+    /**
+     * @return The number of opening bids, at most the requested count.
+     */
+    public int size() {
+        return bids.length;
+    }
+
+    /**
+     * @param index The index of the opening round.
+     * @return The opening bid of the round, or the bid with our maximum utility if there are not that many.
+     */
+    public Bid getBid(int index) {
+        return mapper.convertToBid(index < bids.length ? bids[index] : bestBid);
+    }
+}
@@ -0,0 +1,438 @@
+package ai2020.group17;
+
+import geniusweb.actions.Action;
+import geniusweb.actions.PartyId;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.progress.Progress;
+import tudelft.utilities.logging.Reporter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+
+/**
+ * Trains the opponent models on the actions of the opponents, and publishes the most recent trained models.
+ *
+ * In asynchronous mode the training runs on a pool of background threads, so informs can be handled
+ * without waiting for training. The models of different opponents are independent and are trained in
+ * parallel, while the actions of a single opponent are trained on in the order they were submitted.
+ * The trained models therefore don't depend on the number of threads. Readers get the most recently
+ * published models, optionally waiting a bounded time for queued training to finish
+ * (see {@link #getModels(long)}). Otherwise the training runs inline in {@link #submit(Action, Progress)}.
+ *
+ * In batched mode, meant for opponent models that share a {@link TFMultiOpponentUtilityModel}, the queued
+ * actions of all opponents are trained together with {@link TFLinearAdditiveOpponentModel#withAll}: one
+ * session run per mini-batch for all opponents. The queued actions are trained in waves of at most one action
+ * per opponent, so each opponent still trains on its actions one by one and in order. Asynchronous batches run
+ * on a single background thread, and take all actions that were queued while the previous batch ran. Inline
+ * batches are trained when the models are read, so all actions of a round form a single batch.
+ */
+public class OpponentModelTrainer implements AutoCloseable {
+
+    // Maximum time to wait for a running training step when closing
+    private static final long CLOSE_TIMEOUT_MS = 10000;
+
+    private final Function<PartyId, TFLinearAdditiveOpponentModel> modelFactory;
+    private final Reporter reporter;
+
+    // Executor that runs the training, null if training runs inline
+    private final ExecutorService executor;
+
+    // Whether the opponents are trained together, see the class description
+    private final boolean batched;
+
+    // In batched mode, the actions that are not taken by a batch yet, in the order they were submitted,
+    // and the progress of the last one. Guarded by this.
+    private final List<Action> queued = new ArrayList<>();
+    private Progress queuedProgress;
+
+    // In batched async mode, whether a batch is scheduled or running. Guarded by this.
+    private boolean batchScheduled = false;
+
+    // The last queued training step per opponent, the next step of that opponent runs after it
+    private final Map<PartyId, CompletableFuture<Void>> queues = new ConcurrentHashMap<>();
+
+    // The most recently trained model per opponent
+    private final Map<PartyId, TFLinearAdditiveOpponentModel> models = new ConcurrentHashMap<>();
+
+    // Number of submitted actions that are not trained on yet, guarded by this
+    private int pending = 0;
+
+    // Whether the trainer is closed, after which no actions are accepted and no models are published.
+    // Guarded by this.
+    private boolean closed = false;
+
+    // Latency of the training steps
+    private final LatencyTracker trainingLatency = new LatencyTracker();
+
+    /**
+     * Create trainer that trains on a single background thread if async.
+     * @param modelFactory Creates an untrained model for a new opponent.
+     * @param async Whether to train on a background thread.
+     * @param reporter Reporter for failed training steps in the background.
+     */
+    public OpponentModelTrainer(Function<PartyId, TFLinearAdditiveOpponentModel> modelFactory, boolean async, Reporter reporter) {
+        this(modelFactory, async, 1, reporter);
+    }
+
+    /**
+     * Create trainer.
+     * @param modelFactory Creates an untrained model for a new opponent.
+     * @param async Whether to train on background threads.
+     * @param threads Maximum number of opponent models that are trained in parallel if async.
+     * @param reporter Reporter for failed training steps in the background.
+     */
+    public OpponentModelTrainer(Function<PartyId, TFLinearAdditiveOpponentModel> modelFactory, boolean async, int threads,
+                                Reporter reporter) {
+        this(modelFactory, async, threads, false, reporter);
+    }
+
+    /**
+     * Create trainer.
+     * @param modelFactory Creates an untrained model for a new opponent.
+     * @param async Whether to train on background threads.
+     * @param threads Maximum number of opponent models that are trained in parallel if async and not batched.
+     * @param batched Whether the opponents are trained together, see the class description.
+     * @param reporter Reporter for failed training steps in the background.
+     */
+    public OpponentModelTrainer(Function<PartyId, TFLinearAdditiveOpponentModel> modelFactory, boolean async, int threads,
+                                boolean batched, Reporter reporter) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1, got " + threads);
+        }
+
+        this.modelFactory = modelFactory;
+        this.reporter = reporter;
+        this.batched = batched;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = async ? Executors.newFixedThreadPool(batched ? 1 : threads, runnable -> {
+            Thread thread = new Thread(runnable, "opponent-model-trainer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Queue an action of an opponent to train its model on.
+     * @param action The Offer or Votes of the opponent.
+     * @param progress The progress at the time of the action.
+     */
+    public void submit(Action action, Progress progress) {
+        if (batched) {
+            submitToBatch(action, progress);
+            return;
+        }
+
+        Runnable task = () -> {
+            try {
+                train(action, progress);
+            } finally {
+                synchronized (this) {
+                    // close() already reset the count
+                    if (!closed) {
+                        pending--;
+                        notifyAll();
+                    }
+                }
+            }
+        };
+
+        synchronized (this) {
+            // Actions that arrive while closing are dropped
+            if (closed) {
+                return;
+            }
+
+            pending++;
+
+            if (executor != null) {
+                // Chain after the previous action of the same opponent, so its training steps keep their order.
+                // A step that failed, even with an Error, doesn't stop the later steps, so they still count down.
+                queues.compute(action.getActor(), (actor, previous) -> previous == null
+                        ? CompletableFuture.runAsync(task, executor)
+                        : previous.exceptionally(e -> null).thenRunAsync(task, executor));
+                return;
+            }
+        }
+
+        task.run();
+    }
+
+    private synchronized void submitToBatch(Action action, Progress progress) {
+        if (closed) {
+            return;
+        }
+
+        pending++;
+        queued.add(action);
+        queuedProgress = progress;
+
+        if (executor != null && !batchScheduled) {
+            batchScheduled = true;
+            executor.execute(this::trainQueued);
+        }
+    }
+
+    /**
+     * In batched mode, train on the queued actions until there are none left.
+     */
+    private void trainQueued() {
+        while (true) {
+            List<Action> actions;
+            Progress progress;
+
+            synchronized (this) {
+                if (queued.isEmpty() || closed) {
+                    batchScheduled = false;
+                    return;
+                }
+
+                actions = new ArrayList<>(queued);
+                progress = queuedProgress;
+                queued.clear();
+            }
+
+            boolean trained = false;
+
+            try {
+                trainBatch(actions, progress);
+                trained = true;
+            } finally {
+                synchronized (this) {
+                    if (!closed) {
+                        pending -= actions.size();
+                        notifyAll();
+                    }
+
+                    // Keep training the later actions on a new task if this batch failed with an Error
+                    if (!trained && executor != null) {
+                        if (queued.isEmpty() || closed) {
+                            batchScheduled = false;
+                        } else {
+                            executor.execute(this::trainQueued);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Train on a batch of actions, in waves of at most one action per opponent.
+     */
+    private void trainBatch(List<Action> actions, Progress progress) {
+        Map<PartyId, List<Action>> actionsPerOpponent = new LinkedHashMap<>();
+        for (Action action : actions) {
+            actionsPerOpponent.computeIfAbsent(action.getActor(), actor -> new ArrayList<>()).add(action);
+        }
+
+        for (int wave = 0; !actionsPerOpponent.isEmpty(); wave++) {
+            long start = System.nanoTime();
+
+            Map<PartyId, Action> waveActions = new HashMap<>();
+            Iterator<Map.Entry<PartyId, List<Action>>> iterator = actionsPerOpponent.entrySet().iterator();
+
+            while (iterator.hasNext()) {
+                Map.Entry<PartyId, List<Action>> opponentActions = iterator.next();
+                waveActions.put(opponentActions.getKey(), opponentActions.getValue().get(wave));
+
+                if (opponentActions.getValue().size() == wave + 1) {
+                    iterator.remove();
+                }
+            }
+
+            try {
+                Map<PartyId, TFLinearAdditiveOpponentModel> current = new HashMap<>();
+
+                for (PartyId actor : waveActions.keySet()) {
+                    TFLinearAdditiveOpponentModel model = models.get(actor);
+
+                    // initialize opponent model if not yet created
+                    if (model == null) {
+                        if (isClosed()) {
+                            return;
+                        }
+
+                        model = modelFactory.apply(actor);
+                    }
+
+                    current.put(actor, model);
+                }
+
+                publish(TFLinearAdditiveOpponentModel.withAll(current, waveActions, progress));
+                trainingLatency.recordSince(start);
+            } catch (RuntimeException e) {
+                if (executor == null) {
+                    throw e;
+                }
+
+                if (isClosed()) {
+                    return;
+                }
+
+                // Keep using the previous models
+                reporter.log(Level.WARNING, "Failed to train the opponent models of " + waveActions.keySet(), e);
+            }
+        }
+    }
+
+    /**
+     * Publish trained models, or close them if the trainer is closed.
+     */
+    private synchronized void publish(Map<PartyId, TFLinearAdditiveOpponentModel> trained) {
+        if (closed) {
+            for (TFLinearAdditiveOpponentModel model : trained.values()) {
+                model.close();
+            }
+
+            return;
+        }
+
+        models.putAll(trained);
+    }
+
+    private void train(Action action, Progress progress) {
+        PartyId actor = action.getActor();
+        long start = System.nanoTime();
+
+        try {
+            TFLinearAdditiveOpponentModel model = models.get(actor);
+
+            // initialize opponent model if not yet created
+            if (model == null) {
+                if (isClosed()) {
+                    return;
+                }
+
+                model = modelFactory.apply(actor);
+            }
+
+            // Update opponent with action, and publish the updated model.
+            // A model trained while closing is not published, so it is closed there instead of in close().
+            publish(Collections.singletonMap(actor, model.with(action, progress)));
+            trainingLatency.recordSince(start);
+        } catch (RuntimeException e) {
+            if (executor == null) {
+                throw e;
+            }
+
+            // Creating a model fails once the models are closed
+            if (isClosed()) {
+                return;
+            }
+
+            // Keep using the previous model
+            reporter.log(Level.WARNING, "Failed to train the opponent model of " + actor, e);
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Wait until all submitted actions are trained on, or until the timeout passes.
+     * Returns directly once the trainer is closed, since the queued actions are dropped then.
+     * @param timeoutMs Maximum time to wait in ms.
+     * @return true iff all submitted actions are trained on.
+     */
+    public boolean awaitIdle(long timeoutMs) {
+        if (batched && executor == null) {
+            trainQueued();
+        }
+
+        return awaitPending(timeoutMs);
+    }
+
+    private synchronized boolean awaitPending(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        try {
+            while (pending > 0 && !closed) {
+                long remaining = deadline - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the most recently trained models.
+     * @param maxWaitMs Maximum time to wait for queued training to finish. With 0 the
+     *                  published models are returned directly, even if they are stale.
+     * @return The models per opponent.
+     */
+    public Map<PartyId, LinearAdditive> getModels(long maxWaitMs) {
+        if (batched && executor == null) {
+            trainQueued();
+        } else if (maxWaitMs > 0) {
+            awaitIdle(maxWaitMs);
+        }
+
+        return new HashMap<>(models);
+    }
+
+    /**
+     * @return The latency of the training steps of a single opponent.
+     */
+    public LatencyTracker getTrainingLatency() {
+        return trainingLatency;
+    }
+
+    /**
+     * Stop training, and release the native resources of all models. Actions submitted afterwards are ignored.
+     *
+     * Must not be called while holding a lock that the model factory needs, since a running training step
+     * may be creating a model.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+
+            // The dropped actions will never count down
+            pending = 0;
+            notifyAll();
+        }
+
+        if (executor != null) {
+            // Drop queued actions, but let a running training step finish before its model is closed
+            executor.shutdownNow();
+
+            try {
+                executor.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (TFLinearAdditiveOpponentModel model : models.values()) {
+            model.close();
+        }
+
+        models.clear();
+        queues.clear();
+    }
+}
@@ -0,0 +1,143 @@
+package ai2020.group17;
+
+import java.util.Arrays;
+
+/**
+ * An int[] bid packed into as few longs as possible, with the option index of each issue stored in the minimum
+ * number of bits. Used as a compact key with cheap equality, e.g. to deduplicate observed bids.
+ *
+ * Packed bids are only comparable if they are packed with the same {@link Layout}. Immutable.
+ */
+public final class PackedBid {
+
+    private static final long[] NO_WORDS = new long[0];
+
+    // The first 64 bits, and the remaining words if the layout needs more
+    private final long first;
+    private final long[] rest;
+
+    private PackedBid(long first, long[] rest) {
+        this.first = first;
+        this.rest = rest;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PackedBid)) return false;
+        PackedBid bid = (PackedBid) o;
+        return first == bid.first && Arrays.equals(rest, bid.rest);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(first) + Arrays.hashCode(rest);
+    }
+
+    @Override
+    public String toString() {
+        return "PackedBid [first=" + Long.toHexString(first) + ", rest=" + Arrays.toString(rest) + "]";
+    }
+
+    /**
+     * The bit positions of the issues of a domain. An issue never crosses a word boundary. Immutable.
+     */
+    public static class Layout {
+
+        // Word, shift and mask of the option index per issue
+        private final int[] words;
+        private final int[] shifts;
+        private final long[] masks;
+
+        private final int nWords;
+
+        /**
+         * @param issuesOptions The number of options per issue.
+         */
+        public Layout(int[] issuesOptions) {
+            words = new int[issuesOptions.length];
+            shifts = new int[issuesOptions.length];
+            masks = new long[issuesOptions.length];
+
+            int word = 0;
+            int shift = 0;
+
+            for (int i = 0; i < issuesOptions.length; i++) {
+                int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(issuesOptions[i] - 1));
+
+                if (shift + bits > Long.SIZE) {
+                    word++;
+                    shift = 0;
+                }
+
+                words[i] = word;
+                shifts[i] = shift;
+                masks[i] = (1L << bits) - 1;
+
+                shift += bits;
+            }
+
+            nWords = word + 1;
+        }
+
+        /**
+         * @return The number of longs of a packed bid.
+         */
+        public int getWordCount() {
+            return nWords;
+        }
+
+        /**
+         * Pack an int[] bid.
+         * @param options The int[] bid.
+         * @return The packed bid.
+         */
+        public PackedBid pack(int[] options) {
+            long[] packed = new long[nWords];
+
+            for (int i = 0; i < options.length; i++) {
+                set(packed, i, options[i]);
+            }
+
+            return of(packed);
+        }
+
+        // Set the option of an issue in words that are being packed, the option must not be set yet
+        void set(long[] packed, int issueIndex, int option) {
+            packed[words[issueIndex]] |= (long) option << shifts[issueIndex];
+        }
+
+        /**
+         * @param words The packed words, not used after the call.
+         * @return The packed bid of the words.
+         */
+        PackedBid of(long[] words) {
+            return new PackedBid(words[0], words.length == 1 ? NO_WORDS : Arrays.copyOfRange(words, 1, words.length));
+        }
+
+        /**
+         * Unpack a bid.
+         * @param bid The packed bid.
+         * @param options Array to write the int[] bid to, of length the number of issues.
+         * @return {@code options}.
+         */
+        public int[] unpack(PackedBid bid, int[] options) {
+            for (int i = 0; i < options.length; i++) {
+                options[i] = getOption(bid, i);
+            }
+
+            return options;
+        }
+
+        /**
+         * @param bid The packed bid.
+         * @param issueIndex The index of the issue.
+         * @return The option index of the issue in the bid.
+         */
+        public int getOption(PackedBid bid, int issueIndex) {
+            long word = words[issueIndex] == 0 ? bid.first : bid.rest[words[issueIndex] - 1];
+
+            return (int) ((word >>> shifts[issueIndex]) & masks[issueIndex]);
+        }
+    }
+}
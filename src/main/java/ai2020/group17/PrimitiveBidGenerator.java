@@ -0,0 +1,169 @@
+package ai2020.group17;
+
+import geniusweb.profile.utilityspace.LinearAdditive;
+
+/**
+ * Bid generation on int[] bids, the same algorithm as {@link BidGeneration} but without geniusweb objects.
+ *
+ * Issues are drawn in ascending order of our weight. For every issue only the options that can still reach the
+ * utility threshold are considered (the option with our maximum utility is always considered), and one of them
+ * is drawn proportional to the summed weighted utility of the target opponents.
+ *
+ * Everything that only depends on our profile is precomputed in a {@link BidGeneration.DrawPlan}, and everything
+ * that only depends on the targets is precomputed once per set of targets by {@link #prepare(UtilityTable[])}. The
+ * scratch buffers are reused, so generating a bid into a caller supplied array allocates nothing. Not thread safe.
+ */
+public class PrimitiveBidGenerator {
+
+    private final BidGeneration.DrawPlan plan;
+    private final Sampler sampler;
+
+    // The arrays of the draw plan, see BidGeneration.DrawPlan
+    private final int[] drawOrder;
+    private final double[][] myWeightedUtilities;
+    private final int[] bestOptions;
+    private final double[] worstUtilities;
+    private final double[] maxRemainingUtility;
+
+    // Summed opponent utility per option of the current issue
+    private final double[] distribution;
+
+    // Options of the current issue that are under consideration
+    private final int[] considered;
+
+    /**
+     * Create generator for our profile.
+     * @param myProfile Our profile.
+     * @param mapper Mapper that defines the issue and option indices of the generated bids.
+     * @param sampler Source of randomness for drawing the options.
+     */
+    public PrimitiveBidGenerator(LinearAdditive myProfile, UtilityOfferStringToIntOptionsMapper mapper, Sampler sampler) {
+        this(BidGeneration.DrawPlan.of(myProfile, mapper), sampler);
+    }
+
+    /**
+     * Create generator for the draw plan of our profile, the generated bids use the indices of its mapper.
+     * @param plan The draw plan of our profile.
+     * @param sampler Source of randomness for drawing the options.
+     */
+    public PrimitiveBidGenerator(BidGeneration.DrawPlan plan, Sampler sampler) {
+        this.plan = plan;
+        this.sampler = sampler;
+
+        this.drawOrder = plan.drawOrder;
+        this.myWeightedUtilities = plan.weightedUtilities;
+        this.bestOptions = plan.bestOptions;
+        this.worstUtilities = plan.worstUtilities;
+        this.maxRemainingUtility = plan.maxRemainingUtility;
+
+        this.distribution = new double[plan.getMaxOptions()];
+        this.considered = new int[plan.getMaxOptions()];
+    }
+
+    /**
+     * Create a generator for the same profile that can be used on another thread.
+     * @param sampler Source of randomness of the new generator.
+     * @return The new generator.
+     */
+    public PrimitiveBidGenerator withSampler(Sampler sampler) {
+        return new PrimitiveBidGenerator(plan, sampler);
+    }
+
+    public Sampler getSampler() {
+        return sampler;
+    }
+
+    public UtilityOfferStringToIntOptionsMapper getMapper() {
+        return plan.getMapper();
+    }
+
+    /**
+     * @return The table of our profile, indexed like the generated bids.
+     */
+    public UtilityTable getMyTable() {
+        return plan.getTable();
+    }
+
+    /**
+     * The summed weighted utility of a set of target opponents per issue per option, with an alias table per
+     * issue to draw from all its options. Immutable, so it can be shared between generators on different threads.
+     */
+    public static class Targets {
+
+        final double[][] summedUtilities;
+        final Sampler.AliasTable[] aliasTables;
+
+        private Targets(double[][] summedUtilities, Sampler.AliasTable[] aliasTables) {
+            this.summedUtilities = summedUtilities;
+            this.aliasTables = aliasTables;
+        }
+    }
+
+    /**
+     * Precompute everything of the bid generation that only depends on the targets.
+     * @param targets The tables of the target opponents.
+     * @return The prepared targets.
+     */
+    public Targets prepare(UtilityTable[] targets) {
+        int nIssues = myWeightedUtilities.length;
+
+        double[][] summedUtilities = new double[nIssues][];
+        Sampler.AliasTable[] aliasTables = new Sampler.AliasTable[nIssues];
+
+        for (int i = 0; i < nIssues; i++) {
+            summedUtilities[i] = new double[myWeightedUtilities[i].length];
+
+            for (int j = 0; j < summedUtilities[i].length; j++) {
+                for (UtilityTable target : targets) {
+                    summedUtilities[i][j] += target.getWeightedUtility(i, j);
+                }
+            }
+
+            aliasTables[i] = new Sampler.AliasTable(summedUtilities[i], summedUtilities[i].length);
+        }
+
+        return new Targets(summedUtilities, aliasTables);
+    }
+
+    /**
+     * Generate a bid.
+     * @param targets The prepared target opponents.
+     * @param minTotalUtility The utility threshold the bid should reach for us.
+     * @param bid Array to write the bid to, of length the number of issues.
+     * @return {@code bid}
+     */
+    public int[] generateBid(Targets targets, double minTotalUtility, int[] bid) {
+        double currentUtility = 0;
+
+        for (int k = 0; k < drawOrder.length; k++) {
+            int issue = drawOrder[k];
+            double[] utilities = myWeightedUtilities[issue];
+            double[] summedUtilities = targets.summedUtilities[issue];
+
+            // Minimum utility required for the current issue to reach the threshold
+            double minUtilityForCurrentIssue = minTotalUtility - currentUtility - maxRemainingUtility[k + 1];
+
+            if (worstUtilities[issue] >= minUtilityForCurrentIssue) {
+                // All options are considered, draw from the precomputed distribution
+                bid[issue] = targets.aliasTables[issue].draw(sampler);
+            } else {
+                int nConsidered = 0;
+
+                for (int j = 0; j < utilities.length; j++) {
+                    if (utilities[j] >= minUtilityForCurrentIssue || j == bestOptions[issue]) {
+                        considered[nConsidered] = j;
+                        distribution[nConsidered] = summedUtilities[j];
+                        nConsidered++;
+                    }
+                }
+
+                // Draw an option proportional to the summed utility of the targets
+                bid[issue] = considered[sampler.draw(distribution, nConsidered)];
+            }
+
+            currentUtility += utilities[bid[issue]];
+        }
+
+        return bid;
+    }
+}
@@ -0,0 +1,184 @@
+package ai2020.group17;
+
+import geniusweb.bidspace.BidsWithUtility;
+import geniusweb.profile.utilityspace.LinearAdditiveUtilitySpace;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * JVM wide cache of everything that is computed from our profile, shared by all parties with the same profile.
+ *
+ * Entries are keyed by the URI and the content hash of the profile, and a hit must also have an equal profile,
+ * so a profile that changed behind the same URI gets a new entry. At most {@link #MAX_ENTRIES} profiles are kept,
+ * the least recently used entry is evicted first. Thread safe.
+ */
+public class ProfileCache {
+
+    // Maximum number of cached profiles
+    static final int MAX_ENTRIES = 32;
+
+    // The entries, least recently used first
+    private static final Map<Key, Entry> ENTRIES = Collections.synchronizedMap(
+            new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            });
+
+    private ProfileCache() {
+    }
+
+    /**
+     * Get the cache entry of a profile, creating it if it is not cached.
+     * @param uri The URI the profile was loaded from.
+     * @param space The loaded profile.
+     * @return The entry, its profile equals {@code space}.
+     */
+    public static Entry get(URI uri, LinearAdditiveUtilitySpace space) {
+        Key key = new Key(uri, space.hashCode());
+
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+
+            if (entry == null || !entry.space.equals(space)) {
+                entry = new Entry(space);
+                ENTRIES.put(key, entry);
+            }
+
+            return entry;
+        }
+    }
+
+    /**
+     * @return The number of cached profiles.
+     */
+    static int size() {
+        return ENTRIES.size();
+    }
+
+    private static class Key {
+        final URI uri;
+        final int contentHash;
+
+        Key(URI uri, int contentHash) {
+            this.uri = uri;
+            this.contentHash = contentHash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) other;
+            return contentHash == key.contentHash && Objects.equals(uri, key.uri);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(uri) + contentHash;
+        }
+    }
+
+    /**
+     * The cached data of a profile. The data is immutable or only used through copies, so it can be shared
+     * between parties.
+     */
+    public static class Entry {
+        private final LinearAdditiveUtilitySpace space;
+        private final UtilityOfferStringToIntOptionsMapper mapper;
+        private final UtilityTable table;
+        private final BidGeneration.DrawPlan drawPlan;
+
+        // Created on first use, guarded by this
+        private BidsWithUtility bidsWithUtility;
+        private PrimitiveBidGenerator primitiveBidGenerator;
+
+        // The opening bids per count
+        private final Map<Integer, CompletableFuture<OpeningBids>> openingBids = new ConcurrentHashMap<>();
+
+        Entry(LinearAdditiveUtilitySpace space) {
+            this.space = space;
+            this.mapper = UtilityOfferStringToIntOptionsMapper.forDomain(space.getDomain());
+            this.table = UtilityTable.of(space, mapper);
+            this.drawPlan = BidGeneration.DrawPlan.of(table, mapper);
+        }
+
+        public LinearAdditiveUtilitySpace getSpace() {
+            return space;
+        }
+
+        /**
+         * @return The mapper of the domain of the profile, the indices of all tables of this entry.
+         */
+        public UtilityOfferStringToIntOptionsMapper getMapper() {
+            return mapper;
+        }
+
+        /**
+         * @return The utility table of the profile.
+         */
+        public UtilityTable getTable() {
+            return table;
+        }
+
+        public BidGeneration.DrawPlan getDrawPlan() {
+            return drawPlan;
+        }
+
+        public synchronized BidsWithUtility getBidsWithUtility() {
+            if (bidsWithUtility == null) {
+                bidsWithUtility = new BidsWithUtility(space);
+            }
+
+            return bidsWithUtility;
+        }
+
+        /**
+         * @param sampler The source of randomness of the generator.
+         * @return A primitive bid generator for the profile, that shares its tables with the generators of
+         *         other parties.
+         */
+        public synchronized PrimitiveBidGenerator getPrimitiveBidGenerator(Sampler sampler) {
+            if (primitiveBidGenerator == null) {
+                primitiveBidGenerator = new PrimitiveBidGenerator(drawPlan, sampler);
+                return primitiveBidGenerator;
+            }
+
+            return primitiveBidGenerator.withSampler(sampler);
+        }
+
+        /**
+         * @param count The number of opening bids.
+         * @return The opening bids, computed in the background if they are not cached yet. A failed computation
+         *         is not cached, so a later call computes the bids again.
+         */
+        public CompletableFuture<OpeningBids> getOpeningBids(int count) {
+            return getOpeningBids(count, () -> OpeningBids.compute(getBidsWithUtility(), mapper, count));
+        }
+
+        // Get the cached opening bids, or start computing them with compute
+        CompletableFuture<OpeningBids> getOpeningBids(int count, Supplier<OpeningBids> compute) {
+            CompletableFuture<OpeningBids> bids = openingBids.computeIfAbsent(count,
+                    key -> CompletableFuture.supplyAsync(compute));
+
+            // Registered outside computeIfAbsent, since the future may already be complete
+            bids.whenComplete((result, e) -> {
+                if (e != null) {
+                    openingBids.remove(count, bids);
+                }
+            });
+
+            return bids;
+        }
+    }
+}
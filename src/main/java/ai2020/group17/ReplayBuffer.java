@@ -0,0 +1,168 @@
+package ai2020.group17;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Keeps (a sample of) the previously observed training examples of an opponent model,
+ * which are replayed together with new examples on each training step.
+ *
+ * With an {@link #UNBOUNDED} capacity the full history is replayed, with a capacity of 0 the model is
+ * trained online on the new examples only. Any other capacity bounds the training set per step.
+ *
+ * The same bids are observed many times, e.g. every party votes on the same offers. With a packing,
+ * kept examples of the same bid share a single int[] bid, found through its {@link PackedBid}.
+ */
+public class ReplayBuffer {
+
+    /**
+     * Which examples are kept once the buffer is full.
+     */
+    public enum SamplingPolicy {
+        // Keep the most recently observed examples
+        RECENT,
+
+        // Keep a uniform sample of all observed examples (reservoir sampling)
+        RESERVOIR
+    }
+
+    public static final int UNBOUNDED = -1;
+
+    // Maximum number of shared bids, they are forgotten when it is full
+    static final int MAX_SHARED_BIDS = 100000;
+
+    private final int capacity;
+    private final SamplingPolicy policy;
+    private final Random random;
+
+    // Packing of the bids, null if examples are kept as they are
+    private final PackedBid.Layout packing;
+
+    // The int[] bid that is shared by all kept examples with the same packed bid
+    private final Map<PackedBid, int[]> sharedBids = new HashMap<>();
+
+    private final List<TFUtilityModel.TrainingExample> examples = new ArrayList<>();
+
+    // Index of the oldest example once a RECENT buffer is full
+    private int start = 0;
+
+    // Total number of examples offered to the buffer
+    private long seen = 0;
+
+    /**
+     * Create replay buffer.
+     * @param capacity Maximum number of kept examples, or {@link #UNBOUNDED}.
+     * @param policy Which examples to keep when the buffer is full.
+     * @param random Source of randomness for the {@link SamplingPolicy#RESERVOIR} policy.
+     */
+    public ReplayBuffer(int capacity, SamplingPolicy policy, Random random) {
+        this(capacity, policy, random, null);
+    }
+
+    /**
+     * Create replay buffer that shares the int[] bids of kept examples with the same bid.
+     * @param capacity Maximum number of kept examples, or {@link #UNBOUNDED}.
+     * @param policy Which examples to keep when the buffer is full.
+     * @param random Source of randomness for the {@link SamplingPolicy#RESERVOIR} policy.
+     * @param packing Packing of the bids of the examples, or null to keep the examples as they are.
+     */
+    public ReplayBuffer(int capacity, SamplingPolicy policy, Random random, PackedBid.Layout packing) {
+        if (capacity < UNBOUNDED) {
+            throw new IllegalArgumentException("capacity must be >= 0 or UNBOUNDED, got " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.policy = policy;
+        this.random = random;
+        this.packing = packing;
+    }
+
+    /**
+     * Compute the examples to train on for a step, the replayed examples followed by the new examples.
+     * @param newExamples The examples observed since the last step.
+     * @return The training set for this step.
+     */
+    public List<TFUtilityModel.TrainingExample> trainingSet(List<TFUtilityModel.TrainingExample> newExamples) {
+        List<TFUtilityModel.TrainingExample> result = new ArrayList<>(examples.size() + newExamples.size());
+
+        // Oldest examples first
+        result.addAll(examples.subList(start, examples.size()));
+        result.addAll(examples.subList(0, start));
+
+        result.addAll(newExamples);
+
+        return result;
+    }
+
+    /**
+     * Offer new examples to the buffer.
+     * @param newExamples The examples to add.
+     */
+    public void addAll(List<TFUtilityModel.TrainingExample> newExamples) {
+        for (TFUtilityModel.TrainingExample example : newExamples) {
+            add(example);
+        }
+    }
+
+    /**
+     * Offer a new example to the buffer.
+     * @param example The example to add.
+     */
+    public void add(TFUtilityModel.TrainingExample example) {
+        seen++;
+
+        if (capacity == UNBOUNDED || examples.size() < capacity) {
+            examples.add(share(example));
+            return;
+        }
+
+        if (capacity == 0) {
+            return;
+        }
+
+        switch (policy) {
+            case RECENT:
+                // Overwrite the oldest example
+                examples.set(start, share(example));
+                start = (start + 1) % capacity;
+                break;
+            case RESERVOIR:
+                // Keep the new example with probability capacity / seen
+                long index = (long) (random.nextDouble() * seen);
+                if (index < capacity) {
+                    examples.set((int) index, share(example));
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown sampling policy " + policy);
+        }
+    }
+
+    /**
+     * @param example An example that is kept.
+     * @return The example with the shared int[] bid of its bid.
+     */
+    private TFUtilityModel.TrainingExample share(TFUtilityModel.TrainingExample example) {
+        if (packing == null) {
+            return example;
+        }
+
+        if (sharedBids.size() >= MAX_SHARED_BIDS) {
+            sharedBids.clear();
+        }
+
+        int[] options = sharedBids.computeIfAbsent(packing.pack(example.options), bid -> example.options);
+
+        return options == example.options ? example : new TFUtilityModel.TrainingExample(options, example.accepted);
+    }
+
+    /**
+     * @return The number of examples currently kept.
+     */
+    public int size() {
+        return examples.size();
+    }
+}
@@ -0,0 +1,156 @@
+package ai2020.group17;
+
+import java.util.SplittableRandom;
+
+/**
+ * Source of randomness for drawing from discrete distributions on primitive arrays.
+ *
+ * A sampler is not thread safe. Use {@link #split()} to derive an independent sampler for another thread;
+ * splitting a seeded sampler in the same order gives the same samplers, so seeded runs are reproducible.
+ */
+public class Sampler {
+
+    private final SplittableRandom random;
+
+    /**
+     * Create sampler with a random seed.
+     */
+    public Sampler() {
+        this(new SplittableRandom());
+    }
+
+    /**
+     * Create reproducible sampler.
+     * @param seed The seed.
+     */
+    public Sampler(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    private Sampler(SplittableRandom random) {
+        this.random = random;
+    }
+
+    /**
+     * @return A new sampler that is independent of this one.
+     */
+    public Sampler split() {
+        return new Sampler(random.split());
+    }
+
+    public double nextDouble() {
+        return random.nextDouble();
+    }
+
+    public long nextLong() {
+        return random.nextLong();
+    }
+
+    /**
+     * Draw an index from a discrete distribution with a linear scan.
+     * @param distribution The array defining the discrete distribution.
+     *                     Does not have to be normalized.
+     * @param n The number of entries of {@code distribution} that are used.
+     * @return An index drawn from the first {@code n} entries of {@code distribution},
+     *         0 if they sum to 0.
+     */
+    public int draw(double[] distribution, int n) {
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += distribution[i];
+        }
+
+        double cumulative = nextDouble() * total;
+
+        int i = 0;
+        do {
+            cumulative -= distribution[i];
+            i++;
+        } while (i < n && cumulative > 0);
+
+        return i - 1;
+    }
+
+    /**
+     * Walker alias table of a discrete distribution, to draw from the same distribution many times in O(1).
+     * Immutable, so it can be shared between threads.
+     */
+    public static class AliasTable {
+
+        // Probability to keep the drawn column, otherwise its alias is returned
+        private final double[] probabilities;
+        private final int[] aliases;
+
+        /**
+         * Build the alias table.
+         * @param distribution The array defining the discrete distribution.
+         *                     Does not have to be normalized.
+         * @param n The number of entries of {@code distribution} that are used.
+         */
+        public AliasTable(double[] distribution, int n) {
+            probabilities = new double[n];
+            aliases = new int[n];
+
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                total += distribution[i];
+            }
+
+            if (total <= 0) {
+                // Like the linear scan, always draw the first index
+                return;
+            }
+
+            // Columns with less and more than the average probability, as stacks
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int nSmall = 0;
+            int nLarge = 0;
+
+            for (int i = 0; i < n; i++) {
+                probabilities[i] = distribution[i] * n / total;
+
+                if (probabilities[i] < 1) {
+                    small[nSmall++] = i;
+                } else {
+                    large[nLarge++] = i;
+                }
+            }
+
+            // Fill each small column up with a large column
+            while (nSmall > 0 && nLarge > 0) {
+                int less = small[--nSmall];
+                int more = large[--nLarge];
+
+                aliases[less] = more;
+                probabilities[more] -= 1 - probabilities[less];
+
+                if (probabilities[more] < 1) {
+                    small[nSmall++] = more;
+                } else {
+                    large[nLarge++] = more;
+                }
+            }
+
+            // The remaining columns are full, up to rounding errors
+            while (nLarge > 0) {
+                probabilities[large[--nLarge]] = 1;
+            }
+            while (nSmall > 0) {
+                probabilities[small[--nSmall]] = 1;
+            }
+        }
+
+        /**
+         * Draw an index.
+         * @param sampler The source of randomness.
+         * @return An index drawn from the distribution.
+         */
+        public int draw(Sampler sampler) {
+            double u = sampler.nextDouble() * probabilities.length;
+            int column = Math.min((int) u, probabilities.length - 1);
+
+            return u - column < probabilities[column] ? column : aliases[column];
+        }
+    }
+}
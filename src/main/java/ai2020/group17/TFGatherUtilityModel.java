@@ -0,0 +1,264 @@
+package ai2020.group17;
+
+import org.tensorflow.Graph;
+import org.tensorflow.Operand;
+import org.tensorflow.Session;
+import org.tensorflow.Tensor;
+import org.tensorflow.ndarray.Shape;
+import org.tensorflow.ndarray.buffer.FloatDataBuffer;
+import org.tensorflow.op.Op;
+import org.tensorflow.op.Ops;
+import org.tensorflow.op.core.Assign;
+import org.tensorflow.op.core.Gradients;
+import org.tensorflow.op.core.Placeholder;
+import org.tensorflow.op.core.Variable;
+import org.tensorflow.types.TFloat32;
+import org.tensorflow.types.TInt32;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.tensorflow.op.core.Placeholder.shape;
+
+/**
+ * Variant of the {@link TFUtilityModel} graph that looks up the utilities of the chosen options by index,
+ * instead of multiplying one hot vectors with the utilities of all options.
+ *
+ * The utilities of all options of all issues are concatenated into a single table, in which the options of an
+ * issue start at the offset of that issue. A bid is fed as a single int32 tensor of shape [batch, issues] of
+ * offset indices, and the utilities are gathered from the table. Feeding, predicting and updating a bid therefore
+ * scale with the number of issues instead of the number of options. A single example is trained and predicted
+ * as a batch of one, which has the same loss as the per example graph of {@link TFUtilityModel}.
+ * Initialization, loss and training parameters are the same, so both graphs learn the same model.
+ */
+public class TFGatherUtilityModel implements UtilityModel {
+
+    private final int[] issuesOptions;
+
+    // Offset of the options of each issue in the table of utilities
+    private final int[] offsets;
+
+    private final TrainingParameters trainingParameters;
+
+    private final Graph graph;
+    private final Session session;
+
+    // Offset indices of the chosen options, shape [batch, issues]
+    private final Placeholder<TInt32> indices;
+    private final Placeholder<TFloat32> actuallyAccepted;
+
+    // Summed loss of a batch
+    private final Operand<TFloat32> loss;
+
+    // Predicted utilities, shape [batch]
+    private final Operand<TFloat32> predicted;
+
+    // Gradient descent steps of the utilities and the weights
+    private final List<Op> updates;
+
+    // Model weights in the form of a snapshot: the clipped utility table and the normalized weights
+    private final Operand<TFloat32> utilitiesClipped;
+    private final Operand<TFloat32> normalizedWeights;
+
+    // Reused input buffers
+    private final InputBuffer.Pool<IndexInputBuffer> indexBuffers;
+    private final InputBuffer.Pool<InputBuffer> actualBuffers;
+
+    /**
+     * @param issuesOptions The shape of the domain, see {@link TFUtilityModel#TFUtilityModel(int[])}.
+     * @param trainingParameters How the model should be trained.
+     */
+    public TFGatherUtilityModel(int[] issuesOptions, TrainingParameters trainingParameters) {
+        this.issuesOptions = issuesOptions.clone();
+        this.trainingParameters = trainingParameters;
+
+        offsets = new int[issuesOptions.length];
+        int nOptions = 0;
+        for (int i = 0; i < issuesOptions.length; i++) {
+            offsets[i] = nOptions;
+            nOptions += issuesOptions[i];
+        }
+
+        graph = new Graph();
+        Ops tf = Ops.create(graph);
+
+        Variable<TFloat32> utilities = tf.variable(Shape.of(nOptions), TFloat32.DTYPE);
+        Variable<TFloat32> weights = tf.variable(Shape.of(issuesOptions.length), TFloat32.DTYPE);
+
+        Assign<TFloat32> initUtilities = tf.assign(utilities,
+                tf.constant(Helper.repeat(TFUtilityModel.INITIAL_ISSUE_WEIGHT, nOptions)));
+        Assign<TFloat32> initWeights = tf.assign(weights,
+                tf.constant(Helper.repeat(TFUtilityModel.INITIAL_WEIGHT, issuesOptions.length)));
+
+        indices = tf.placeholder(TInt32.DTYPE, shape(Shape.of(Shape.UNKNOWN_SIZE, issuesOptions.length)));
+        actuallyAccepted = tf.placeholder(TFloat32.DTYPE, shape(Shape.of(Shape.UNKNOWN_SIZE)));
+
+        utilitiesClipped = TFIssue.weightsClipped(tf, utilities);
+        normalizedWeights = TFUtility.normalizedWeights(tf, weights);
+
+        // Shape [batch, issues]. The clipping is element wise, so the chosen utilities are gathered before
+        // clipping, which lets the gradients stop at the gathered values.
+        Operand<TFloat32> chosenUtilities = tf.gather(utilities, indices, tf.constant(0));
+
+        predicted = tf.reduceSum(tf.math.mul(TFIssue.weightsClipped(tf, chosenUtilities), normalizedWeights),
+                tf.constant(1));
+
+        // The same loss as TFUtilityModel, summed over the batch
+        loss = tf.reduceSum(
+                tf.nn.elu(tf.math.square(tf.math.sub(actuallyAccepted, predicted))), tf.constant(0));
+
+        // There is no gradient for the gather op in the C++ gradient registry that the java api uses.
+        // The gradient of a gather is sparse anyway: the gradients of the gathered values are subtracted from
+        // the chosen options with a scatter, which adds up the gradients of options that are chosen repeatedly.
+        Gradients gradients = tf.gradients(loss, Arrays.asList(chosenUtilities, weights));
+        Operand<TFloat32> alpha = tf.constant(trainingParameters.getLearningRate());
+
+        updates = Arrays.asList(
+                tf.scatterSub(utilities, indices, tf.math.mul(alpha, gradients.<TFloat32>dy(0))),
+                tf.train.applyGradientDescent(weights, alpha, gradients.<TFloat32>dy(1)));
+
+        indexBuffers = new InputBuffer.Pool<>(rows -> new IndexInputBuffer(Shape.of(rows, issuesOptions.length)));
+        actualBuffers = new InputBuffer.Pool<>(rows -> new InputBuffer(Shape.of(rows)));
+
+        session = new Session(graph);
+        session.runner().addTarget(initUtilities).addTarget(initWeights).run();
+    }
+
+    @Override
+    public void train(List<TFUtilityModel.TrainingExample> trainingExamples) {
+        if (trainingExamples.isEmpty()) {
+            return;
+        }
+
+        int batchSize;
+        switch (trainingParameters.getMode()) {
+            case PER_EXAMPLE:
+                batchSize = 1;
+                break;
+            case MINI_BATCH:
+                batchSize = trainingParameters.getBatchSize() > 0 ? trainingParameters.getBatchSize() : trainingExamples.size();
+                break;
+            default:
+                throw new IllegalStateException("Unknown training mode " + trainingParameters.getMode());
+        }
+
+        EpochControl epochs = new EpochControl(trainingParameters);
+        do {
+            for (int from = 0; from < trainingExamples.size(); from += batchSize) {
+                int to = Math.min(from + batchSize, trainingExamples.size());
+
+                IndexInputBuffer batch = indexBuffers.get(to - from);
+                InputBuffer actual = actualBuffers.get(to - from);
+
+                for (int j = from; j < to; j++) {
+                    TFUtilityModel.TrainingExample example = trainingExamples.get(j);
+
+                    writeIndices(batch, j - from, example.options);
+                    actual.setFloat(j - from, example.accepted ? 1.0f : 0.0f);
+                }
+
+                Session.Runner runner = session.runner();
+
+                for (Op update : updates) {
+                    runner.addTarget(update);
+                }
+
+                runner.feed(indices, batch.getTensor())
+                        .feed(actuallyAccepted, actual.getTensor());
+
+                Helper.runTrainingStep(epochs, runner, loss);
+            }
+        } while (epochs.nextEpoch());
+    }
+
+    @Override
+    public float predict(int[] options) {
+        IndexInputBuffer batch = indexBuffers.get(1);
+        writeIndices(batch, 0, options);
+
+        try (Tensor<?> result = session.runner().feed(indices, batch.getTensor()).fetch(predicted).run().get(0)) {
+            return result.rawData().asFloats().getFloat(0);
+        }
+    }
+
+    @Override
+    public void predictBatch(int[][] bids, float[] predictions, int chunkSize) {
+        for (int from = 0; from < bids.length; from += chunkSize) {
+            int to = Math.min(from + chunkSize, bids.length);
+
+            IndexInputBuffer batch = indexBuffers.get(to - from);
+            for (int j = from; j < to; j++) {
+                writeIndices(batch, j - from, bids[j]);
+            }
+
+            try (Tensor<?> result = session.runner().feed(indices, batch.getTensor()).fetch(predicted).run().get(0)) {
+                result.rawData().asFloats().read(predictions, from, to - from);
+            }
+        }
+    }
+
+    // Write the offset indices of a bid to a row of the buffer
+    private void writeIndices(IndexInputBuffer buffer, int row, int[] options) {
+        int start = row * options.length;
+
+        for (int i = 0; i < options.length; i++) {
+            buffer.setInt(start + i, offsets[i] + options[i]);
+        }
+    }
+
+    @Override
+    public double[] computeWeights() {
+        return fetch(normalizedWeights, 0, issuesOptions.length);
+    }
+
+    @Override
+    public double[] computeIssueWeights(int issueIndex) {
+        return fetch(utilitiesClipped, offsets[issueIndex], issuesOptions[issueIndex]);
+    }
+
+    @Override
+    public UtilityTable computeSnapshot() {
+        List<Tensor<?>> results = session.runner().fetch(normalizedWeights).fetch(utilitiesClipped).run();
+
+        try {
+            double[] weights = toDoubles(results.get(0), 0, issuesOptions.length);
+
+            double[][] utilities = new double[issuesOptions.length][];
+            for (int i = 0; i < issuesOptions.length; i++) {
+                utilities[i] = toDoubles(results.get(1), offsets[i], issuesOptions[i]);
+            }
+
+            return new UtilityTable(weights, utilities);
+        } finally {
+            Helper.closeAll(results);
+        }
+    }
+
+    private double[] fetch(Operand<TFloat32> operand, int from, int n) {
+        try (Tensor<?> result = session.runner().fetch(operand).run().get(0)) {
+            return toDoubles(result, from, n);
+        }
+    }
+
+    private static double[] toDoubles(Tensor<?> tensor, int from, int n) {
+        FloatDataBuffer floats = tensor.rawData().asFloats();
+        double[] values = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            values[i] = floats.getFloat(from + i);
+        }
+
+        return values;
+    }
+
+    /**
+     * Release the native tf session, graph and input buffers. The model can not be used anymore afterwards.
+     */
+    @Override
+    public void close() {
+        session.close();
+        graph.close();
+        indexBuffers.close();
+        actualBuffers.close();
+    }
+}
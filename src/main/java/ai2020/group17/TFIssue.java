@@ -10,27 +10,38 @@ import org.tensorflow.op.core.Variable;
 import org.tensorflow.op.math.Mul;
 import org.tensorflow.types.TFloat32;
 
+import java.util.List;
 import java.util.function.Supplier;
 
 import static org.tensorflow.op.core.Placeholder.shape;
 
 /**
  * Class that sets up and keeps tf variables for a single issue.
+ *
+ * The one hot vectors are fed from native input buffers that are preallocated and written in place,
+ * so feeding doesn't allocate. The buffers are released by {@link #close()}.
  */
-public class TFIssue {
+public class TFIssue implements AutoCloseable {
 
-    // Just for debugging
+    // Index of the issue in the bids
     int issueIdx;
 
     // Placeholder for the vector that represents which issue option is chosen,
     // e.g. [0, 0, 1, 0] means that the 3rd option is chosen
     Placeholder<TFloat32> issueOneHotVectorPlaceholder;
 
+    // Placeholder for a batch of one hot vectors, with shape [batch, nOptions]
+    Placeholder<TFloat32> issueOneHotBatchPlaceholder;
+
     // tf variable for the utilities that will be trained.
     Variable<TFloat32> issueWeights;
 
     int nOptions;
 
+    // Reused input buffers of the one hot vector and of batches of one hot vectors
+    private final InputBuffer oneHotBuffer;
+    private final InputBuffer.Pool<InputBuffer> oneHotBatchBuffers;
+
     public TFIssue(Ops tf, int nOptions, int issueIdx) {
         this.issueIdx = issueIdx;
 
@@ -38,7 +49,11 @@ public class TFIssue {
 
         // Setup placeholders and variables
         issueOneHotVectorPlaceholder = tf.placeholder(TFloat32.DTYPE, shape(Shape.of(nOptions)));
+        issueOneHotBatchPlaceholder = tf.placeholder(TFloat32.DTYPE, shape(Shape.of(Shape.UNKNOWN_SIZE, nOptions)));
         issueWeights = tf.variable(Shape.of(nOptions), TFloat32.DTYPE);
+
+        oneHotBuffer = new InputBuffer(Shape.of(nOptions));
+        oneHotBatchBuffers = new InputBuffer.Pool<>(rows -> new InputBuffer(Shape.of(rows, nOptions)));
     }
 
     /**
@@ -70,7 +85,68 @@ public class TFIssue {
      * @param option Index of which option is chosen for this issue.
      */
     public void feed(Session.Runner runner, int option) {
-        runner.feed(issueOneHotVectorPlaceholder.asOutput(), TFloat32.vectorOf(getOneHotVector(option)));
+        writeOneHot(oneHotBuffer, 0, option);
+
+        runner.feed(issueOneHotVectorPlaceholder.asOutput(), oneHotBuffer.getTensor());
+    }
+
+    /**
+     * Feed a batch of chosen options as input.
+     *
+     * @param runner The tf runner
+     * @param examples The examples of which {@code from} until {@code to} form the batch.
+     * @param from Index of the first example of the batch.
+     * @param to Index after the last example of the batch.
+     */
+    public void feedBatch(Session.Runner runner, List<TFUtilityModel.TrainingExample> examples, int from, int to) {
+        InputBuffer buffer = oneHotBatchBuffers.get(to - from);
+
+        for (int i = from; i < to; i++) {
+            writeOneHot(buffer, i - from, examples.get(i).options[issueIdx]);
+        }
+
+        runner.feed(issueOneHotBatchPlaceholder.asOutput(), buffer.getTensor());
+    }
+
+    /**
+     * Feed a batch of chosen options as input.
+     *
+     * @param runner The tf runner
+     * @param bids The bids of which {@code from} until {@code to} form the batch.
+     * @param from Index of the first bid of the batch.
+     * @param to Index after the last bid of the batch.
+     */
+    public void feedBatch(Session.Runner runner, int[][] bids, int from, int to) {
+        InputBuffer buffer = oneHotBatchBuffers.get(to - from);
+
+        for (int i = from; i < to; i++) {
+            writeOneHot(buffer, i - from, bids[i][issueIdx]);
+        }
+
+        runner.feed(issueOneHotBatchPlaceholder.asOutput(), buffer.getTensor());
+    }
+
+    /**
+     * Overwrite a row of a buffer with the one hot vector of an option.
+     * @param buffer The buffer.
+     * @param row The row.
+     * @param option The index of the option.
+     */
+    private void writeOneHot(InputBuffer buffer, int row, int option) {
+        int offset = row * nOptions;
+
+        for (int i = 0; i < nOptions; i++) {
+            buffer.setFloat(offset + i, i == option ? 1.0f : 0.0f);
+        }
+    }
+
+    /**
+     * Release the input buffers.
+     */
+    @Override
+    public void close() {
+        oneHotBuffer.close();
+        oneHotBatchBuffers.close();
     }
 
     /**
@@ -84,16 +160,13 @@ public class TFIssue {
     }
 
     /**
-     * Convert index to one hot vector.
-     * @param option The index.
-     * @return resulting one hot vector
+     * Return a reference to a tf operand representing the predicted utility for each example in a batch.
+     *
+     * @param tf The tf Ops.
+     * @return tf operand of predicted utilities with shape [batch]
      */
-    private float[] getOneHotVector(int option) {
-        float[] array = new float[nOptions];
-
-        array[option] = 1.0f;
-
-        return array;
+    Operand<TFloat32> predictUtilityBatch(Ops tf) {
+        return issueUtility(tf, issueOneHotBatchPlaceholder, issueWeights, 1);
     }
 
     // Returns a reference to the weights clipped between 0 and 1
@@ -116,14 +189,28 @@ public class TFIssue {
      */
     private static Operand<TFloat32> issueUtility(Ops tf, Operand<TFloat32> oneHotVector, Operand<TFloat32> weights) {
 
-        Operand<TFloat32> weightsClipped = weightsClipped(tf, weights);
-
-        Mul<TFloat32> inter1 = tf.math.mul(oneHotVector, weightsClipped);
-
-        Operand<TFloat32> result = tf.sum(inter1, tf.constant(0));
+        Operand<TFloat32> result = issueUtility(tf, oneHotVector, weights, 0);
 
         tf.ensureShape(result, Shape.scalar());
 
         return result;
     }
+
+    /**
+     * Compute the utility of the current issue for the chosen options along {@code optionsAxis}.
+     * @param tf The tf Ops.
+     * @param oneHotVectors One hot vector(s) representing the chosen option(s).
+     * @param weights This issue's utility weights
+     * @param optionsAxis The axis of {@code oneHotVectors} that indexes the options.
+     *
+     * @return reference to the utility computation for this issue given the chosen option(s).
+     */
+    private static Operand<TFloat32> issueUtility(Ops tf, Operand<TFloat32> oneHotVectors, Operand<TFloat32> weights, int optionsAxis) {
+
+        Operand<TFloat32> weightsClipped = weightsClipped(tf, weights);
+
+        Mul<TFloat32> inter1 = tf.math.mul(oneHotVectors, weightsClipped);
+
+        return tf.sum(inter1, tf.constant(optionsAxis));
+    }
 }
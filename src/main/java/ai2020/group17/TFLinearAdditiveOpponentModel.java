@@ -2,6 +2,7 @@ package ai2020.group17;
 
 import geniusweb.actions.Action;
 import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
 import geniusweb.actions.Vote;
 import geniusweb.actions.Votes;
 import geniusweb.issuevalue.*;
@@ -13,50 +14,136 @@ import geniusweb.progress.Progress;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 // Opponent model that attempts to infer opponent's LinearAdditive utility function through gradient descent on a Tensorflow model.
-// This class functions as a wrapper around TFUtilityModel that supports the GeniusWeb classes.
-public class TFLinearAdditiveOpponentModel implements OpponentModel, LinearAdditive {
+// This class functions as a wrapper around a UtilityModel (by default the TFUtilityModel) that supports the GeniusWeb classes.
+public class TFLinearAdditiveOpponentModel implements OpponentModel, LinearAdditive, AutoCloseable {
 
 	private Domain domain;
 
 	// Mapper object used to map geniusweb bids to int[] bids
 	private UtilityOfferStringToIntOptionsMapper mapper = null;
 
-	// The actual tensorflow model
-	private TFUtilityModel tfModel;
+	// The actual model, tensorflow or plain java depending on the training parameters
+	private UtilityModel tfModel;
 
-	// The list of gathered data points to train the model on.
-	private List<TFUtilityModel.TrainingExample> trainingData = new ArrayList<>();
+	// The gathered data points that are replayed when training on new data points.
+	private ReplayBuffer replayBuffer;
+
+	// Parameters used for creating the tf model and replay buffer
+	private TrainingParameters trainingParameters = TrainingParameters.DEFAULT;
+
+	// Snapshot of the inferred weights and utilities after the last training step.
+	// All LinearAdditive accessors read from this snapshot, so they don't need to run the tf model.
+	private UtilityTable snapshot;
+	private Map<String, ValueSetUtilities> snapshotUtilities;
+	private Map<String, BigDecimal> snapshotWeights;
+
+	// Number of training steps that led to this snapshot
+	private long version = 0;
 
 	public TFLinearAdditiveOpponentModel() {
 
 	}
 
-	public TFLinearAdditiveOpponentModel(Domain domain, UtilityOfferStringToIntOptionsMapper mapper, TFUtilityModel tfModel,
-										 List<TFUtilityModel.TrainingExample> trainingData) {
+	public TFLinearAdditiveOpponentModel(Domain domain, UtilityOfferStringToIntOptionsMapper mapper, UtilityModel tfModel,
+										 ReplayBuffer replayBuffer, TrainingParameters trainingParameters, long version) {
 		this.domain = domain;
 		this.mapper = mapper;
 		this.tfModel = tfModel;
-		this.trainingData = trainingData;
+		this.replayBuffer = replayBuffer;
+		this.trainingParameters = trainingParameters;
+		this.version = version;
+
+		takeSnapshot(tfModel.computeSnapshot());
+	}
+
+	/**
+	 * Wrap a trained utility model of which the snapshot is already computed.
+	 */
+	private TFLinearAdditiveOpponentModel(TFLinearAdditiveOpponentModel previous, UtilityModel tfModel, UtilityTable snapshot) {
+		this.domain = previous.domain;
+		this.mapper = previous.mapper;
+		this.tfModel = tfModel;
+		this.replayBuffer = previous.replayBuffer;
+		this.trainingParameters = previous.trainingParameters;
+		this.version = previous.version + 1;
+
+		takeSnapshot(snapshot);
 	}
 	
 	
 	public TFLinearAdditiveOpponentModel(Domain domain) {
+		this(domain, TrainingParameters.DEFAULT);
+	}
+
+	public TFLinearAdditiveOpponentModel(Domain domain, TrainingParameters trainingParameters) {
+		this(domain, trainingParameters, new Random());
+	}
+
+	/**
+	 * @param domain The domain.
+	 * @param trainingParameters Parameters for the utility model and the replay buffer.
+	 * @param random Source of randomness for the replay buffer, seed it for reproducible training.
+	 */
+	public TFLinearAdditiveOpponentModel(Domain domain, TrainingParameters trainingParameters, Random random) {
 		this.domain = domain;
+		this.trainingParameters = trainingParameters;
 
-		Map<String, ValueSet> issuesOptions = new HashMap<>();
+		mapper = UtilityOfferStringToIntOptionsMapper.forDomain(domain);
 
-		for(String issue: this.domain.getIssues()) {
-			issuesOptions.put(issue, domain.getValues(issue));
-		}
+		this.tfModel = trainingParameters.createUtilityModel(mapper.issuesOptions);
+		this.replayBuffer = trainingParameters.createReplayBuffer(random, mapper.getPacking());
 
-		mapper = new UtilityOfferStringToIntOptionsMapper(issuesOptions);
+		takeSnapshot(tfModel.computeSnapshot());
+	}
 
-		this.tfModel = new TFUtilityModel(mapper.issuesOptions);
+	/**
+	 * Create an opponent model around an existing, untrained utility model,
+	 * e.g. a slot of a {@link TFMultiOpponentUtilityModel}.
+	 *
+	 * @param domain The domain.
+	 * @param mapper Mapper that defines the issue and option indices of {@code model}.
+	 * @param model The utility model.
+	 * @param trainingParameters Parameters for the replay buffer.
+	 * @param random Source of randomness for the replay buffer.
+	 */
+	public TFLinearAdditiveOpponentModel(Domain domain, UtilityOfferStringToIntOptionsMapper mapper, UtilityModel model,
+										 TrainingParameters trainingParameters, Random random) {
+		this(domain, mapper, model, trainingParameters.createReplayBuffer(random, mapper.getPacking()), trainingParameters, 0);
+	}
+
+	/**
+	 * Set {@link #snapshot} to the current weights of the tf model, and derive the geniusweb maps from it.
+	 */
+	private void takeSnapshot(UtilityTable snapshot) {
+		this.snapshot = snapshot;
+
+		// Set up resulting hashmap of utilities per issue
+		Map<String, ValueSetUtilities> valueSetUtilitiesMap = new HashMap<>();
+
+		// Put gathered weights into map of issue name -> weight
+		Map<String, BigDecimal> weightsMap = new HashMap<>();
+
+		for (int issueIndex = 0; issueIndex < snapshot.getIssueCount(); issueIndex++) {
+
+			// Put gathered utilities into a map of value -> utility
+			Map<DiscreteValue, BigDecimal> result = new HashMap<>();
+			for (int i = 0; i < snapshot.utilities[issueIndex].length; i++) {
+				result.put((DiscreteValue) mapper.mapOptionIndexToValue(issueIndex, i), BigDecimal.valueOf(snapshot.getUtility(issueIndex, i)));
+			}
+
+			valueSetUtilitiesMap.put(mapper.mapIndexToIssue(issueIndex), new DiscreteValueSetUtilities(result));
+			weightsMap.put(mapper.mapIndexToIssue(issueIndex), BigDecimal.valueOf(snapshot.getWeight(issueIndex)));
+		}
+
+		snapshotUtilities = Collections.unmodifiableMap(valueSetUtilitiesMap);
+		snapshotWeights = Collections.unmodifiableMap(weightsMap);
 	}
 
 	
@@ -78,14 +165,92 @@ public class TFLinearAdditiveOpponentModel implements OpponentModel, LinearAddit
 
 	@Override
 	public TFLinearAdditiveOpponentModel with(Domain domain, Bid resBid) {
-		return new TFLinearAdditiveOpponentModel(domain);
+		return new TFLinearAdditiveOpponentModel(domain, trainingParameters);
 	}
 
 	@Override
 	public TFLinearAdditiveOpponentModel with(Action action, Progress progress) {
-		TFUtilityModel tfModel = this.tfModel;
+		UtilityModel tfModel = this.tfModel;
 		this.tfModel = null;
 
+		List<TFUtilityModel.TrainingExample> newExamples = toExamples(action);
+
+		// Train the model on the new training data, together with the replayed earlier training data
+		tfModel.train(replayBuffer.trainingSet(newExamples));
+		replayBuffer.addAll(newExamples);
+
+		return new TFLinearAdditiveOpponentModel(this.domain, this.mapper, tfModel, this.replayBuffer, this.trainingParameters, this.version + 1);
+	}
+
+	/**
+	 * Train the models of several opponents on a new action each.
+	 *
+	 * Models around slots of the same {@link TFMultiOpponentUtilityModel} are trained with a single
+	 * {@link TFMultiOpponentUtilityModel#trainAll}, and their snapshots are read with a single
+	 * {@link TFMultiOpponentUtilityModel#computeAll}. Other models are trained one by one with
+	 * {@code with(Action, Progress)}. Like there, the given models don't own their utility models anymore afterwards.
+	 *
+	 * @param models The current model per opponent, at least of the opponents in {@code actions}.
+	 * @param actions The new action per opponent.
+	 * @param progress The progress at the time of the actions.
+	 * @return The trained model per opponent in {@code actions}.
+	 */
+	public static Map<PartyId, TFLinearAdditiveOpponentModel> withAll(Map<PartyId, TFLinearAdditiveOpponentModel> models,
+																	  Map<PartyId, Action> actions, Progress progress) {
+		Map<PartyId, TFLinearAdditiveOpponentModel> trained = new HashMap<>();
+
+		// The opponents per shared model
+		Map<TFMultiOpponentUtilityModel, List<PartyId>> sharedOpponents = new HashMap<>();
+
+		for (Map.Entry<PartyId, Action> action : actions.entrySet()) {
+			TFLinearAdditiveOpponentModel model = models.get(action.getKey());
+
+			if (model.tfModel instanceof TFMultiOpponentUtilityModel.Slot) {
+				TFMultiOpponentUtilityModel shared = ((TFMultiOpponentUtilityModel.Slot) model.tfModel).getModel();
+				sharedOpponents.computeIfAbsent(shared, key -> new ArrayList<>()).add(action.getKey());
+			} else {
+				trained.put(action.getKey(), model.with(action.getValue(), progress));
+			}
+		}
+
+		for (Map.Entry<TFMultiOpponentUtilityModel, List<PartyId>> shared : sharedOpponents.entrySet()) {
+			Map<Integer, List<TFUtilityModel.TrainingExample>> trainingSets = new HashMap<>();
+			Map<PartyId, List<TFUtilityModel.TrainingExample>> newExamples = new HashMap<>();
+
+			for (PartyId opponent : shared.getValue()) {
+				TFLinearAdditiveOpponentModel model = models.get(opponent);
+				List<TFUtilityModel.TrainingExample> examples = model.toExamples(actions.get(opponent));
+
+				newExamples.put(opponent, examples);
+				trainingSets.put(((TFMultiOpponentUtilityModel.Slot) model.tfModel).getSlot(),
+						model.replayBuffer.trainingSet(examples));
+			}
+
+			shared.getKey().trainAll(trainingSets);
+			UtilityTable[] tables = shared.getKey().computeAll();
+
+			for (PartyId opponent : shared.getValue()) {
+				TFLinearAdditiveOpponentModel model = models.get(opponent);
+				TFMultiOpponentUtilityModel.Slot slot = (TFMultiOpponentUtilityModel.Slot) model.tfModel;
+
+				model.tfModel = null;
+				model.replayBuffer.addAll(newExamples.get(opponent));
+
+				trained.put(opponent, new TFLinearAdditiveOpponentModel(model, slot, tables[slot.getSlot()]));
+			}
+		}
+
+		return trained;
+	}
+
+	/**
+	 * Convert an action into training examples.
+	 * @param action The Offer or Votes of the opponent, other actions give no examples.
+	 * @return The training examples.
+	 */
+	private List<TFUtilityModel.TrainingExample> toExamples(Action action) {
+		List<TFUtilityModel.TrainingExample> newExamples = new ArrayList<>();
+
 		// Convert incoming action into training examples
 		if (action instanceof Votes) {
 
@@ -101,7 +266,7 @@ public class TFLinearAdditiveOpponentModel implements OpponentModel, LinearAddit
 				int[] bidOptions = mapper.convertOptions(bid.getIssueValues());
 				TFUtilityModel.TrainingExample trainingExample = new TFUtilityModel.TrainingExample(bidOptions, isAccepted);
 
-				trainingData.add(trainingExample);
+				newExamples.add(trainingExample);
 			}
 		} else if (action instanceof Offer) {
 			Offer offer = (Offer) action;
@@ -112,58 +277,61 @@ public class TFLinearAdditiveOpponentModel implements OpponentModel, LinearAddit
 			int[] bidOptions = mapper.convertOptions(bid.getIssueValues());
 			TFUtilityModel.TrainingExample trainingExample = new TFUtilityModel.TrainingExample(bidOptions, true);
 
-			trainingData.add(trainingExample);
+			newExamples.add(trainingExample);
 		}
 
-		// Train the model on all training data gather up to now
-		tfModel.train(this.trainingData);
-
-		return new TFLinearAdditiveOpponentModel(this.domain, this.mapper, tfModel, this.trainingData);
+		return newExamples;
 	}
 
 
+	/**
+	 * Release the (native) resources of the underlying model.
+	 *
+	 * Only the most recent model returned by {@code with(Action, Progress)} owns the underlying model,
+	 * closing an older model has no effect. The snapshot can still be read after closing.
+	 */
 	@Override
-	public Map<String, ValueSetUtilities> getUtilities() {
-		// Set up resulting hashmap of utilities per issue
-		Map<String, ValueSetUtilities> valueSetUtilitiesMap = new HashMap<>();
-
-		for (String issueName: this.domain.getIssues()) {
-
-			int issueIndex = mapper.issueIndices.get(issueName);
+	public void close() {
+		if (tfModel != null) {
+			tfModel.close();
+			tfModel = null;
+		}
+	}
 
-			// Get the utilities for issueName from the tf model
-			double[] weights = this.tfModel.computeIssueWeights(issueIndex);
+	/**
+	 * @return Primitive snapshot of the inferred utility function, indexed like {@link #getMapper()}.
+	 */
+	public UtilityTable getSnapshot() {
+		return snapshot;
+	}
 
-			// Put gathered utilities into a map of value -> utility
-			Map<DiscreteValue, BigDecimal> result = new HashMap<>();
-			for (int i = 0; i < weights.length; i++) {
-				result.put((DiscreteValue) mapper.mapOptionIndexToValue(issueIndex, i), BigDecimal.valueOf(weights[i]));
-			}
+	/**
+	 * @return The mapper that defines the issue and option indices of {@link #getSnapshot()}.
+	 */
+	public UtilityOfferStringToIntOptionsMapper getMapper() {
+		return mapper;
+	}
 
-			valueSetUtilitiesMap.put(issueName, new DiscreteValueSetUtilities(result));
-		}
+	/**
+	 * @return The number of training steps that led to this model, it increases with every {@code with(Action, Progress)}.
+	 */
+	public long getVersion() {
+		return version;
+	}
 
-		return valueSetUtilitiesMap;
+	@Override
+	public Map<String, ValueSetUtilities> getUtilities() {
+		return snapshotUtilities;
 	}
 
 	@Override
 	public Map<String, BigDecimal> getWeights() {
-
-		// Get the weights from the model
-		double[] weights = this.tfModel.computeWeights();
-
-		// Put gathered weights into map of issue name -> weight
-		Map<String, BigDecimal> result = new HashMap<>();
-		for (int i = 0; i < weights.length; i++) {
-			result.put(mapper.mapIndexToIssue(i), BigDecimal.valueOf(weights[i]));
-		}
-
-		return result;
+		return snapshotWeights;
 	}
 
 	@Override
 	public BigDecimal getWeight(String issue) {
-		return getWeights().get(issue);
+		return snapshotWeights.get(issue);
 	}
 
 	@Override
@@ -171,16 +339,16 @@ public class TFLinearAdditiveOpponentModel implements OpponentModel, LinearAddit
 
 		double utility = 0;
 
-		// First get weights
+		// Calculate weighted utility for bid directly from the snapshot
 		// This approach was chosen over directly using the tf model to allow for partial bids
-		Map<String, ValueSetUtilities> utilities = this.getUtilities();
-		Map<String, BigDecimal> weights = this.getWeights();
+		for (Map.Entry<String, Value> issueValue: bid.getIssueValues().entrySet()) {
+			int issueIndex = mapper.issueIndices.get(issueValue.getKey());
+			Integer optionIndex = mapper.issueOptionIndices.get(issueIndex).get(issueValue.getValue());
 
-		// Calculate weighted utility for bid
-		for(String issue: bid.getIssues()) {
-			Value  value = bid.getIssueValues().get(issue);
-
-			utility += weights.get(issue).doubleValue() * utilities.get(issue).getUtility(value).doubleValue();
+			// Values that are not in the domain have utility 0
+			if (optionIndex != null) {
+				utility += snapshot.getWeightedUtility(issueIndex, optionIndex);
+			}
 		}
 
 		return BigDecimal.valueOf(utility);
@@ -0,0 +1,576 @@
+package ai2020.group17;
+
+import org.tensorflow.Graph;
+import org.tensorflow.Operand;
+import org.tensorflow.Session;
+import org.tensorflow.Tensor;
+import org.tensorflow.ndarray.Shape;
+import org.tensorflow.ndarray.buffer.FloatDataBuffer;
+import org.tensorflow.op.Op;
+import org.tensorflow.op.Ops;
+import org.tensorflow.op.core.Gradients;
+import org.tensorflow.op.core.Placeholder;
+import org.tensorflow.op.core.ReduceSum;
+import org.tensorflow.op.core.Stack;
+import org.tensorflow.op.core.Variable;
+import org.tensorflow.types.TFloat32;
+import org.tensorflow.types.TInt32;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.tensorflow.op.core.Placeholder.shape;
+
+/**
+ * Tensorflow model of the utility functions of multiple opponents in a single graph and session.
+ *
+ * Each issue has one {@code [capacity, nOptions]} variable with a row per opponent slot, and the relative
+ * weights are a {@code [capacity, nIssues]} variable. The rows of a batch are selected with a one hot
+ * encoding of the slot of each example, so the examples of all opponents can be trained in a single run.
+ *
+ * Use {@link #addOpponent()} to get a {@link UtilityModel} view on a slot. When all slots are in use the
+ * graph is rebuilt once with double the capacity. Training the slots one by one through their views works,
+ * but only {@link #trainAll(Map)} and {@link #computeAll()} handle all opponents in a single run, see
+ * {@link TFLinearAdditiveOpponentModel#withAll}.
+ */
+public class TFMultiOpponentUtilityModel implements AutoCloseable {
+
+    private final int[] issuesOptions;
+    private final TrainingParameters trainingParameters;
+
+    private int capacity;
+    private int nOpponents = 0;
+
+    // The tensorflow graph, session and operations for the current capacity
+    private Graph graph;
+    private Session session;
+
+    // Utility weights per issue, shape [capacity, nOptions]
+    private List<Variable<TFloat32>> issueWeights;
+
+    // Relative weights, shape [capacity, nIssues]
+    private Variable<TFloat32> weights;
+
+    // Derived quantities for reading the model
+    private List<Operand<TFloat32>> issueWeightsClipped;
+    private Operand<TFloat32> normalizedWeights;
+
+    // Placeholders of a batch: the slot per example, a one hot vector per issue per example and the labels
+    private Placeholder<TInt32> slots;
+    private List<Placeholder<TFloat32>> oneHotVectors;
+    private Placeholder<TFloat32> actuallyAccepted;
+
+    private Operand<TFloat32> predicted;
+    private Operand<TFloat32> exampleLosses;
+    private List<Op> gradientDescents;
+
+    // Reused input buffers of the batches, they don't depend on the capacity so they are kept when growing
+    private final InputBuffer.Pool<IndexInputBuffer> slotBuffers;
+    private final List<InputBuffer.Pool<InputBuffer>> oneHotBuffers = new ArrayList<>();
+    private final InputBuffer.Pool<InputBuffer> actualBuffers;
+
+    /**
+     * Create model.
+     * @param issuesOptions The shape of the domain, see {@link TFUtilityModel#TFUtilityModel(int[])}.
+     * @param capacity The initial number of opponent slots.
+     * @param trainingParameters How the model should be trained. PER_EXAMPLE training is trained as batches
+     *                           of a single example per opponent, which gives the same result.
+     */
+    public TFMultiOpponentUtilityModel(int[] issuesOptions, int capacity, TrainingParameters trainingParameters) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1, got " + capacity);
+        }
+
+        this.issuesOptions = issuesOptions;
+        this.trainingParameters = trainingParameters;
+
+        slotBuffers = new InputBuffer.Pool<>(rows -> new IndexInputBuffer(Shape.of(rows)));
+        for (int nOptions : issuesOptions) {
+            oneHotBuffers.add(new InputBuffer.Pool<>(rows -> new InputBuffer(Shape.of(rows, nOptions))));
+        }
+        actualBuffers = new InputBuffer.Pool<>(rows -> new InputBuffer(Shape.of(rows)));
+
+        float[][][] initialIssueWeights = new float[issuesOptions.length][][];
+        for (int i = 0; i < issuesOptions.length; i++) {
+            initialIssueWeights[i] = repeatRows(TFUtilityModel.INITIAL_ISSUE_WEIGHT, capacity, issuesOptions[i]);
+        }
+
+        build(capacity, initialIssueWeights, repeatRows(TFUtilityModel.INITIAL_WEIGHT, capacity, issuesOptions.length));
+    }
+
+    /**
+     * Build the graph and session for the given capacity, and initialize the variables.
+     */
+    private void build(int capacity, float[][][] initialIssueWeights, float[][] initialWeights) {
+        this.capacity = capacity;
+
+        graph = new Graph();
+        Ops tf = Ops.create(graph);
+
+        slots = tf.placeholder(TInt32.DTYPE, shape(Shape.of(Shape.UNKNOWN_SIZE)));
+        actuallyAccepted = tf.placeholder(TFloat32.DTYPE, shape(Shape.of(Shape.UNKNOWN_SIZE)));
+
+        // Shape [batch, capacity], used to select the rows of the slot of each example
+        Operand<TFloat32> slotsOneHot = tf.oneHot(slots, tf.constant(capacity), tf.constant(1.0f), tf.constant(0.0f));
+
+        List<Op> assigns = new ArrayList<>();
+        List<Variable<TFloat32>> variables = new ArrayList<>();
+
+        issueWeights = new ArrayList<>();
+        issueWeightsClipped = new ArrayList<>();
+        oneHotVectors = new ArrayList<>();
+        List<Operand<TFloat32>> issueUtilities = new ArrayList<>();
+
+        for (int i = 0; i < issuesOptions.length; i++) {
+            Variable<TFloat32> variable = tf.variable(Shape.of(capacity, issuesOptions[i]), TFloat32.DTYPE);
+            assigns.add(tf.assign(variable, tf.constant(initialIssueWeights[i])));
+
+            Operand<TFloat32> clipped = TFIssue.weightsClipped(tf, variable);
+
+            Placeholder<TFloat32> oneHotVector = tf.placeholder(TFloat32.DTYPE, shape(Shape.of(Shape.UNKNOWN_SIZE, issuesOptions[i])));
+
+            // Shape [batch, nOptions] and [batch]
+            Operand<TFloat32> rows = tf.linalg.matMul(slotsOneHot, clipped);
+            issueUtilities.add(tf.reduceSum(tf.math.mul(oneHotVector, rows), tf.constant(1)));
+
+            issueWeights.add(variable);
+            issueWeightsClipped.add(clipped);
+            oneHotVectors.add(oneHotVector);
+            variables.add(variable);
+        }
+
+        weights = tf.variable(Shape.of(capacity, issuesOptions.length), TFloat32.DTYPE);
+        assigns.add(tf.assign(weights, tf.constant(initialWeights)));
+        variables.add(weights);
+
+        normalizedWeights = tf.math.div(weights, tf.reduceSum(weights, tf.constant(1), ReduceSum.keepDims(true)));
+
+        // Shape [batch, nIssues]
+        Operand<TFloat32> weightRows = tf.linalg.matMul(slotsOneHot, normalizedWeights);
+        Stack<TFloat32> utilities = tf.stack(issueUtilities, Stack.axis(1L));
+
+        predicted = tf.reduceSum(tf.math.mul(utilities, weightRows), tf.constant(1));
+
+        // Sum of the per example losses, like the mini-batch loss of TFUtilityModel
+        exampleLosses = tf.nn.elu(tf.math.square(tf.math.sub(actuallyAccepted, predicted)));
+        Operand<TFloat32> loss = tf.reduceSum(exampleLosses, tf.constant(0));
+
+        Gradients gradients = tf.gradients(loss, variables);
+        Operand<TFloat32> alpha = tf.constant(trainingParameters.getLearningRate());
+
+        gradientDescents = new ArrayList<>();
+        for (int i = 0; i < variables.size(); i++) {
+            gradientDescents.add(tf.train.applyGradientDescent(variables.get(i), alpha, gradients.<TFloat32>dy(i)));
+        }
+
+        session = new Session(graph);
+
+        Session.Runner runner = session.runner();
+        for (Op assign : assigns) {
+            runner.addTarget(assign);
+        }
+        runner.run();
+    }
+
+    /**
+     * Rebuild the graph with double the capacity, keeping the weights of the existing slots.
+     */
+    private void grow() {
+        int newCapacity = capacity * 2;
+
+        float[][][] newIssueWeights = new float[issuesOptions.length][][];
+        for (int i = 0; i < issuesOptions.length; i++) {
+            newIssueWeights[i] = repeatRows(TFUtilityModel.INITIAL_ISSUE_WEIGHT, newCapacity, issuesOptions[i]);
+            copyRows(fetch(issueWeights.get(i)), newIssueWeights[i]);
+        }
+
+        float[][] newWeights = repeatRows(TFUtilityModel.INITIAL_WEIGHT, newCapacity, issuesOptions.length);
+        copyRows(fetch(weights), newWeights);
+
+        session.close();
+        graph.close();
+        build(newCapacity, newIssueWeights, newWeights);
+    }
+
+    /**
+     * Reserve a slot for a new opponent.
+     * @return A view on the new slot.
+     */
+    public synchronized Slot addOpponent() {
+        if (nOpponents == capacity) {
+            grow();
+        }
+
+        return new Slot(nOpponents++);
+    }
+
+    /**
+     * Train the slots of several opponents at once.
+     *
+     * Each epoch, the i-th mini-batch of every opponent is trained in the same session run. Since the slots
+     * don't share weights, this gives the same result as training each slot separately. Every slot has its own
+     * {@link EpochControl}, so it stops early on its own loss, and is left out of the runs of later epochs.
+     *
+     * @param trainingExamples The training examples per slot index.
+     */
+    public synchronized void trainAll(Map<Integer, List<TFUtilityModel.TrainingExample>> trainingExamples) {
+        int maxExamples = trainingExamples.values().stream().mapToInt(List::size).max().orElse(0);
+
+        if (maxExamples == 0) {
+            return;
+        }
+
+        int batchSize;
+        switch (trainingParameters.getMode()) {
+            case PER_EXAMPLE:
+                batchSize = 1;
+                break;
+            case MINI_BATCH:
+                batchSize = trainingParameters.getBatchSize() > 0 ? trainingParameters.getBatchSize() : maxExamples;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown training mode " + trainingParameters.getMode());
+        }
+
+        int nSlots = trainingExamples.size();
+        int[] slotIndices = new int[nSlots];
+        List<List<TFUtilityModel.TrainingExample>> slotExamples = new ArrayList<>(nSlots);
+        EpochControl[] epochs = new EpochControl[nSlots];
+
+        // Whether each slot is still being trained, a slot without examples isn't trained at all
+        boolean[] training = new boolean[nSlots];
+        boolean anyTraining = false;
+
+        int k = 0;
+        for (Map.Entry<Integer, List<TFUtilityModel.TrainingExample>> entry : trainingExamples.entrySet()) {
+            slotIndices[k] = entry.getKey();
+            slotExamples.add(entry.getValue());
+            epochs[k] = new EpochControl(trainingParameters);
+            training[k] = !entry.getValue().isEmpty();
+            anyTraining |= training[k];
+            k++;
+        }
+
+        boolean tracksLoss = epochs[0].tracksLoss();
+
+        while (anyTraining) {
+            for (int from = 0; from < maxExamples; from += batchSize) {
+                int rows = 0;
+                for (int slot = 0; slot < nSlots; slot++) {
+                    if (training[slot]) {
+                        rows += batchRows(slotExamples.get(slot), from, batchSize);
+                    }
+                }
+
+                // Only the slots with fewer examples are still training
+                if (rows == 0) {
+                    continue;
+                }
+
+                InputBuffer actual = actualBuffers.get(rows);
+
+                int row = 0;
+                for (int slot = 0; slot < nSlots; slot++) {
+                    if (!training[slot]) {
+                        continue;
+                    }
+
+                    List<TFUtilityModel.TrainingExample> examples = slotExamples.get(slot);
+                    for (int i = from; i < from + batchRows(examples, from, batchSize); i++) {
+                        writeRow(rows, row, slotIndices[slot], examples.get(i).options);
+                        actual.setFloat(row, examples.get(i).accepted ? 1.0f : 0.0f);
+                        row++;
+                    }
+                }
+
+                Session.Runner runner = session.runner();
+
+                for (Op gradientDescent : gradientDescents) {
+                    runner.addTarget(gradientDescent);
+                }
+
+                feed(runner, rows);
+                runner.feed(actuallyAccepted, actual.getTensor());
+
+                if (tracksLoss) {
+                    try (Tensor<?> result = runner.fetch(exampleLosses).run().get(0)) {
+                        addLosses(result.rawData().asFloats(), slotExamples, training, epochs, from, batchSize);
+                    }
+                } else {
+                    runner.run();
+                }
+            }
+
+            anyTraining = false;
+            for (int slot = 0; slot < nSlots; slot++) {
+                if (training[slot]) {
+                    training[slot] = epochs[slot].nextEpoch();
+                    anyTraining |= training[slot];
+                }
+            }
+        }
+    }
+
+    // The number of examples of a slot in the mini-batch that starts at from
+    private static int batchRows(List<TFUtilityModel.TrainingExample> examples, int from, int batchSize) {
+        return Math.max(0, Math.min(from + batchSize, examples.size()) - from);
+    }
+
+    // Add the summed loss of the rows of each training slot in a batch to its epoch control
+    private static void addLosses(FloatDataBuffer losses, List<List<TFUtilityModel.TrainingExample>> slotExamples,
+                                  boolean[] training, EpochControl[] epochs, int from, int batchSize) {
+        int row = 0;
+        for (int slot = 0; slot < epochs.length; slot++) {
+            int slotRows = training[slot] ? batchRows(slotExamples.get(slot), from, batchSize) : 0;
+
+            if (slotRows > 0) {
+                float loss = 0;
+                for (int i = 0; i < slotRows; i++) {
+                    loss += losses.getFloat(row++);
+                }
+
+                epochs[slot].addLoss(loss);
+            }
+        }
+    }
+
+    /**
+     * Compute the predictions for bids of (possibly) different opponents in a single run.
+     * @param batchSlots The slot index per bid.
+     * @param options The bids.
+     * @return The predicted utility per bid.
+     */
+    public synchronized float[] predictAll(List<Integer> batchSlots, List<int[]> options) {
+        int rows = options.size();
+
+        for (int row = 0; row < rows; row++) {
+            writeRow(rows, row, batchSlots.get(row), options.get(row));
+        }
+
+        Session.Runner runner = session.runner();
+        feed(runner, rows);
+
+        try (Tensor<?> result = runner.fetch(predicted).run().get(0)) {
+            FloatDataBuffer floats = result.rawData().asFloats();
+
+            float[] predictions = new float[rows];
+            floats.read(predictions);
+
+            return predictions;
+        }
+    }
+
+    /**
+     * Compute the utility tables of all opponents in a single run.
+     * @return The utility table per slot index.
+     */
+    public synchronized UtilityTable[] computeAll() {
+        List<Tensor<?>> results = fetchAll();
+
+        try {
+            UtilityTable[] tables = new UtilityTable[nOpponents];
+            for (int slot = 0; slot < nOpponents; slot++) {
+                tables[slot] = toTable(results, slot);
+            }
+
+            return tables;
+        } finally {
+            Helper.closeAll(results);
+        }
+    }
+
+    /**
+     * Compute the utility table of a single opponent.
+     * @param slot The slot index of the opponent.
+     * @return The utility table.
+     */
+    public synchronized UtilityTable compute(int slot) {
+        List<Tensor<?>> results = fetchAll();
+
+        try {
+            return toTable(results, slot);
+        } finally {
+            Helper.closeAll(results);
+        }
+    }
+
+    // Fetch the normalized weights and the clipped utilities of all issues, in a single run
+    private List<Tensor<?>> fetchAll() {
+        Session.Runner runner = session.runner().fetch(normalizedWeights);
+        for (Operand<TFloat32> clipped : issueWeightsClipped) {
+            runner.fetch(clipped);
+        }
+
+        return runner.run();
+    }
+
+    private UtilityTable toTable(List<Tensor<?>> results, int slot) {
+        double[][] utilities = new double[issuesOptions.length][];
+        for (int i = 0; i < issuesOptions.length; i++) {
+            utilities[i] = toRow(results.get(i + 1), slot, issuesOptions[i]);
+        }
+
+        return new UtilityTable(toRow(results.get(0), slot, issuesOptions.length), utilities);
+    }
+
+    // Fetch a single row of an operand of shape [capacity, columns]
+    private synchronized double[] fetchRow(Operand<TFloat32> operand, int row, int columns) {
+        try (Tensor<?> result = session.runner().fetch(operand).run().get(0)) {
+            return toRow(result, row, columns);
+        }
+    }
+
+    private static double[] toRow(Tensor<?> tensor, int row, int columns) {
+        FloatDataBuffer floats = tensor.rawData().asFloats();
+
+        double[] values = new double[columns];
+        for (int j = 0; j < columns; j++) {
+            values[j] = floats.getFloat((long) row * columns + j);
+        }
+
+        return values;
+    }
+
+    // Write the slot and the one hot vectors of a bid to a row of the input buffers of a batch
+    private void writeRow(int rows, int row, int slot, int[] options) {
+        slotBuffers.get(rows).setInt(row, slot);
+
+        for (int i = 0; i < issuesOptions.length; i++) {
+            InputBuffer oneHot = oneHotBuffers.get(i).get(rows);
+            int offset = row * issuesOptions[i];
+
+            for (int j = 0; j < issuesOptions[i]; j++) {
+                oneHot.setFloat(offset + j, j == options[i] ? 1.0f : 0.0f);
+            }
+        }
+    }
+
+    // Feed the slots and one hot vectors written to the input buffers of a batch
+    private void feed(Session.Runner runner, int rows) {
+        runner.feed(slots, slotBuffers.get(rows).getTensor());
+
+        for (int i = 0; i < issuesOptions.length; i++) {
+            runner.feed(oneHotVectors.get(i), oneHotBuffers.get(i).get(rows).getTensor());
+        }
+    }
+
+    private float[][] fetch(Operand<TFloat32> variable) {
+        try (Tensor<?> result = session.runner().fetch(variable).run().get(0)) {
+            int columns = (int) result.shape().size(1);
+            double[][] rows = toRows(result, columns);
+
+            float[][] floats = new float[rows.length][columns];
+            for (int i = 0; i < rows.length; i++) {
+                for (int j = 0; j < columns; j++) {
+                    floats[i][j] = (float) rows[i][j];
+                }
+            }
+
+            return floats;
+        }
+    }
+
+    private static double[][] toRows(Tensor<?> tensor, int columns) {
+        FloatDataBuffer floats = tensor.rawData().asFloats();
+
+        double[][] rows = new double[(int) (floats.size() / columns)][columns];
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < columns; j++) {
+                rows[i][j] = floats.getFloat((long) i * columns + j);
+            }
+        }
+
+        return rows;
+    }
+
+    private static float[][] repeatRows(float number, int rows, int columns) {
+        float[][] result = new float[rows][];
+        for (int i = 0; i < rows; i++) {
+            result[i] = Helper.repeat(number, columns);
+        }
+
+        return result;
+    }
+
+    private static void copyRows(float[][] from, float[][] to) {
+        for (int i = 0; i < from.length; i++) {
+            System.arraycopy(from[i], 0, to[i], 0, from[i].length);
+        }
+    }
+
+    /**
+     * @return The number of opponent slots the current graph has room for.
+     */
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Release the native tf session and graph of all slots, and the input buffers.
+     */
+    @Override
+    public synchronized void close() {
+        session.close();
+        graph.close();
+
+        slotBuffers.close();
+        for (InputBuffer.Pool<InputBuffer> pool : oneHotBuffers) {
+            pool.close();
+        }
+        actualBuffers.close();
+    }
+
+    /**
+     * View on the slot of a single opponent. Closing a slot does nothing, the shared model is closed by its owner.
+     */
+    public class Slot implements UtilityModel {
+
+        private final int slot;
+
+        private Slot(int slot) {
+            this.slot = slot;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+        /**
+         * @return The shared model this is a slot of.
+         */
+        public TFMultiOpponentUtilityModel getModel() {
+            return TFMultiOpponentUtilityModel.this;
+        }
+
+        @Override
+        public void train(List<TFUtilityModel.TrainingExample> trainingExamples) {
+            trainAll(Collections.singletonMap(slot, trainingExamples));
+        }
+
+        @Override
+        public float predict(int[] options) {
+            return predictAll(Collections.singletonList(slot), Collections.singletonList(options))[0];
+        }
+
+        @Override
+        public double[] computeWeights() {
+            synchronized (TFMultiOpponentUtilityModel.this) {
+                return fetchRow(normalizedWeights, slot, issuesOptions.length);
+            }
+        }
+
+        @Override
+        public double[] computeIssueWeights(int issueIndex) {
+            synchronized (TFMultiOpponentUtilityModel.this) {
+                return fetchRow(issueWeightsClipped.get(issueIndex), slot, issuesOptions[issueIndex]);
+            }
+        }
+
+        @Override
+        public UtilityTable computeSnapshot() {
+            return compute(slot);
+        }
+    }
+}
@@ -92,6 +92,21 @@ public class TFUtility {
         return utility(tf, issueUtilities, weights);
     }
 
+    /**
+     * Reference to the predict utility operation for a batch of bids.
+     * @param tf The tf Ops.
+     * @return Operand to the predicted utilities, with shape [batch].
+     */
+    public Operand<TFloat32> predictUtilityBatch(Ops tf) {
+        ArrayList<Operand<TFloat32>> issueUtilities = new ArrayList<>();
+
+        for (int i = 0; i < this.issues.length; i++) {
+            issueUtilities.add(this.issues[i].predictUtilityBatch(tf));
+        }
+
+        return utilityBatch(tf, issueUtilities, weights);
+    }
+
     /**
      * Feed in a bid.
      * @param runner The tf runner.
@@ -103,6 +118,41 @@ public class TFUtility {
         }
     }
 
+    /**
+     * Feed in a batch of bids.
+     * @param runner The tf runner.
+     * @param examples The examples of which {@code from} until {@code to} form the batch.
+     * @param from Index of the first example of the batch.
+     * @param to Index after the last example of the batch.
+     */
+    public void feedBatch(Session.Runner runner, List<TFUtilityModel.TrainingExample> examples, int from, int to) {
+        for (TFIssue issue : issues) {
+            issue.feedBatch(runner, examples, from, to);
+        }
+    }
+
+    /**
+     * Feed in a batch of bids.
+     * @param runner The tf runner.
+     * @param bids The bids of which {@code from} until {@code to} form the batch.
+     * @param from Index of the first bid of the batch.
+     * @param to Index after the last bid of the batch.
+     */
+    public void feedBatch(Session.Runner runner, int[][] bids, int from, int to) {
+        for (TFIssue issue : issues) {
+            issue.feedBatch(runner, bids, from, to);
+        }
+    }
+
+    /**
+     * Release the input buffers of all issues.
+     */
+    public void close() {
+        for (TFIssue issue : issues) {
+            issue.close();
+        }
+    }
+
     /**
      * Method for gathering all weights that should be trained.
      * Including both the issue utility weights and the relative weights.
@@ -174,4 +224,23 @@ public class TFUtility {
 
         return result;
     }
+
+    /**
+     * Reference to the predict utility operation for a batch, given issue utility weights and relative weights.
+     * @param tf The tf Ops.
+     * @param issueUtilities The issue utilities, each with shape [batch].
+     * @param weights The relative weights.
+     * @return Operand to the predicted utilities, with shape [batch].
+     */
+    private static Operand<TFloat32> utilityBatch(Ops tf, Iterable<Operand<TFloat32>> issueUtilities, Operand<TFloat32> weights) {
+
+        // Shape [batch, issues]
+        Stack<TFloat32> utilities = tf.stack(issueUtilities, Stack.axis(1L));
+
+        Operand<TFloat32> normalizedWeights = normalizedWeights(tf, weights);
+
+        Mul<TFloat32> inter1 = tf.math.mul(utilities, normalizedWeights);
+
+        return tf.reduceSum(inter1, tf.constant(1));
+    }
 }
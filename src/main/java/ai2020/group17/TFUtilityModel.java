@@ -13,6 +13,7 @@ import org.tensorflow.op.core.Placeholder;
 import org.tensorflow.op.train.ApplyGradientDescent;
 import org.tensorflow.types.TFloat32;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.LongStream;
@@ -22,7 +23,7 @@ import static org.tensorflow.op.core.Placeholder.shape;
 /**
  * Class that setups and manages the tf model.
  */
-public class TFUtilityModel {
+public class TFUtilityModel implements UtilityModel {
 
     /**
      * Class that represents training examples of int[] bids
@@ -57,6 +58,16 @@ public class TFUtilityModel {
 		}
     }
 
+    // Default number of passes over the training data per call to train, see TrainingParameters
+    static final int EPOCHS = 10;
+
+    // Default gradient descent learning rate
+    static final float LEARNING_RATE = 0.01f;
+
+    // Initial value of the utility weights of each issue option, and of the relative issue weights
+    static final float INITIAL_ISSUE_WEIGHT = 0.5f;
+    static final float INITIAL_WEIGHT = 1.0f;
+
     // The tensorflow Graph and Ops objects
     Graph graph;
     Ops tf;
@@ -69,10 +80,30 @@ public class TFUtilityModel {
     List<ApplyGradientDescent<TFloat32>> gradientDescents;
     Placeholder<TFloat32> actuallyAccepted;
     Operand<TFloat32> predicted;
+    Operand<TFloat32> loss;
+
+    // Tensorflow placeholders and operations for training on and predicting batches
+    List<ApplyGradientDescent<TFloat32>> batchGradientDescents;
+    Placeholder<TFloat32> actuallyAcceptedBatch;
+    Operand<TFloat32> predictedBatch;
+    Operand<TFloat32> batchLoss;
+
+    // The model weights as in a LinearAdditive: the normalized issue weights and the clipped utilities per issue.
+    // Defined once, so fetching them doesn't grow the graph.
+    Operand<TFloat32> normalizedWeights;
+    List<Operand<TFloat32>> issueWeightsClipped;
+
+    // How the model is trained
+    private final TrainingParameters trainingParameters;
 
     // The tf session to actually operate on the graph
+    // Together with the graph it holds native memory, which is released by close()
     private final Session session;
 
+    // Reused input buffers of the expected outputs
+    private final InputBuffer actualBuffer = new InputBuffer(Shape.scalar());
+    private final InputBuffer.Pool<InputBuffer> actualBatchBuffers = new InputBuffer.Pool<>(rows -> new InputBuffer(Shape.of(rows)));
+
     /**
      * The class that manages the tf model states, and allows for training and inference of weights.
      *
@@ -80,6 +111,18 @@ public class TFUtilityModel {
      *                      and the first issue has 3 possible options and the second issue has 4 possible options.
      */
     public TFUtilityModel(int[] issuesOptions) {
+        this(issuesOptions, TrainingParameters.DEFAULT);
+    }
+
+    /**
+     * The class that manages the tf model states, and allows for training and inference of weights.
+     *
+     * @param issuesOptions The shape of the domain, see {@link #TFUtilityModel(int[])}.
+     * @param trainingParameters How the model should be trained.
+     */
+    public TFUtilityModel(int[] issuesOptions, TrainingParameters trainingParameters) {
+        this.trainingParameters = trainingParameters;
+
         graph = new Graph();
 
         tf = Ops.create(graph);
@@ -89,8 +132,8 @@ public class TFUtilityModel {
         tfUtility = new TFUtility(tf, issuesOptions);
 
 
-        List<Assign<TFloat32>> assigns = tfUtility.initIssueWeights(tf, 0.5f);
-        assigns.add(tfUtility.initWeights(tf, 1.0f));
+        List<Assign<TFloat32>> assigns = tfUtility.initIssueWeights(tf, INITIAL_ISSUE_WEIGHT);
+        assigns.add(tfUtility.initWeights(tf, INITIAL_WEIGHT));
 
         // Store reference to the prediction operation
         predicted = tfUtility.predictUtility(tf);
@@ -99,15 +142,32 @@ public class TFUtilityModel {
         actuallyAccepted = tf.placeholder(TFloat32.DTYPE, shape(Shape.scalar()));
 
         // A different loss might work better, but this seemed to work a lot better than MSE.
-        Operand<TFloat32> loss = tf.nn.elu(tf.math.square(tf.math.sub(actuallyAccepted, predicted)));
+        loss = tf.nn.elu(tf.math.square(tf.math.sub(actuallyAccepted, predicted)));
         tf.ensureShape(loss, Shape.scalar());
 
         // Learning rate
-        Constant<TFloat32> alpha = tf.constant(0.01f);
+        Constant<TFloat32> alpha = tf.constant(trainingParameters.getLearningRate());
 
         // Keep reference to gradient descents
         gradientDescents = tfUtility.applyGradientDescent(tf, loss, alpha);
 
+        // The batch loss is the sum of the per example losses, so a batch step moves the weights
+        // about as far as the same examples would in per example training.
+        predictedBatch = tfUtility.predictUtilityBatch(tf);
+        actuallyAcceptedBatch = tf.placeholder(TFloat32.DTYPE, shape(Shape.of(Shape.UNKNOWN_SIZE)));
+
+        batchLoss = tf.reduceSum(
+                tf.nn.elu(tf.math.square(tf.math.sub(actuallyAcceptedBatch, predictedBatch))), tf.constant(0));
+
+        batchGradientDescents = tfUtility.applyGradientDescent(tf, batchLoss, alpha);
+
+        normalizedWeights = TFUtility.normalizedWeights(tf, tfUtility.weights);
+
+        issueWeightsClipped = new ArrayList<>();
+        for (TFIssue issue : tfUtility.issues) {
+            issueWeightsClipped.add(TFIssue.weightsClipped(tf, issue.issueWeights));
+        }
+
         // Initialize session
         session = new Session(graph);
 
@@ -120,14 +180,31 @@ public class TFUtilityModel {
     }
 
     // Each int[] represents the choice for an option per issue, e.g. [4, 2] represents choice of option 4 on issue 0 and option 2 on issue 1
+    @Override
     public void train(List<TrainingExample> trainingExamples) {
-        // Repeat training loop 10 times
-        for (int i = 0; i < 10; i++) {
+        switch (trainingParameters.getMode()) {
+            case PER_EXAMPLE:
+                trainPerExample(trainingExamples);
+                break;
+            case MINI_BATCH:
+                trainMiniBatch(trainingExamples, trainingParameters.getBatchSize());
+                break;
+            default:
+                throw new IllegalStateException("Unknown training mode " + trainingParameters.getMode());
+        }
+    }
+
+    /**
+     * Train with one gradient step per training example.
+     * @param trainingExamples The examples to train on.
+     */
+    private void trainPerExample(List<TrainingExample> trainingExamples) {
+        // Repeat the training loop until the epoch control stops it, by default 10 times
+        EpochControl epochs = new EpochControl(trainingParameters);
+        do {
 
             // Train on each trainingexample
             for (TrainingExample example : trainingExamples) {
-                float actual = example.accepted ? 1.0f : 0.0f;
-
                 Session.Runner runner = session.runner();
 
                 // Add gradient descent targets
@@ -137,12 +214,52 @@ public class TFUtilityModel {
 
                 // Feed in training data
                 tfUtility.feed(runner, example.options);
-                runner.feed(this.actuallyAccepted, TFloat32.scalarOf(actual));
+
+                actualBuffer.setFloat(0, example.accepted ? 1.0f : 0.0f);
+                runner.feed(this.actuallyAccepted, actualBuffer.getTensor());
 
                 // Run with training targets
-                runner.run();
+                Helper.runTrainingStep(epochs, runner, this.loss);
             }
+        } while (epochs.nextEpoch());
+    }
+
+    /**
+     * Train with one gradient step per mini-batch of training examples.
+     * @param trainingExamples The examples to train on.
+     * @param batchSize The number of examples per batch, 0 means all examples in a single batch.
+     */
+    private void trainMiniBatch(List<TrainingExample> trainingExamples, int batchSize) {
+        if (trainingExamples.isEmpty()) {
+            return;
+        }
+
+        if (batchSize <= 0) {
+            batchSize = trainingExamples.size();
         }
+
+        EpochControl epochs = new EpochControl(trainingParameters);
+        do {
+            for (int from = 0; from < trainingExamples.size(); from += batchSize) {
+                int to = Math.min(from + batchSize, trainingExamples.size());
+
+                Session.Runner runner = session.runner();
+
+                for (ApplyGradientDescent<TFloat32> gradDescent : this.batchGradientDescents) {
+                    runner.addTarget(gradDescent);
+                }
+
+                tfUtility.feedBatch(runner, trainingExamples, from, to);
+
+                InputBuffer actual = actualBatchBuffers.get(to - from);
+                for (int j = from; j < to; j++) {
+                    actual.setFloat(j - from, trainingExamples.get(j).accepted ? 1.0f : 0.0f);
+                }
+                runner.feed(this.actuallyAcceptedBatch, actual.getTensor());
+
+                Helper.runTrainingStep(epochs, runner, this.batchLoss);
+            }
+        } while (epochs.nextEpoch());
     }
 
     /**
@@ -150,15 +267,36 @@ public class TFUtilityModel {
      * @param options input bid
      * @return predicted utility
      */
+    @Override
     public float predict(int[] options) {
         Session.Runner runner = session.runner();
 
         tfUtility.feed(runner, options);
 
-        float predictedAcceptedValue = runner.fetch(this.predicted)
-                .run().get(0).rawData().asFloats().getFloat(0);
+        try (Tensor<?> result = runner.fetch(this.predicted).run().get(0)) {
+            return result.rawData().asFloats().getFloat(0);
+        }
+    }
+
+    /**
+     * Compute the predictions for many bids, with one run per chunk of bids.
+     * @param bids The input bids.
+     * @param predictions Receives the predicted utility of {@code bids[i]} at index {@code i}.
+     * @param chunkSize The maximum number of bids per run.
+     */
+    @Override
+    public void predictBatch(int[][] bids, float[] predictions, int chunkSize) {
+        for (int from = 0; from < bids.length; from += chunkSize) {
+            int to = Math.min(from + chunkSize, bids.length);
 
-        return predictedAcceptedValue;
+            Session.Runner runner = session.runner();
+
+            tfUtility.feedBatch(runner, bids, from, to);
+
+            try (Tensor<?> result = runner.fetch(this.predictedBatch).run().get(0)) {
+                result.rawData().asFloats().read(predictions, from, to - from);
+            }
+        }
     }
 
     /**
@@ -169,47 +307,86 @@ public class TFUtilityModel {
     public void printWeights() {
 
         for(TFIssue issue: tfUtility.issues) {
-            Tensor<?> computedIssueWeights = session.runner().fetch(issue.issueWeights).run().get(0);
+            try (Tensor<?> computedIssueWeights = session.runner().fetch(issue.issueWeights).run().get(0)) {
 
-            System.out.println("Weight issue" + issue.issueIdx + " is " + computedIssueWeights);
+                System.out.println("Weight issue" + issue.issueIdx + " is " + computedIssueWeights);
 
-            FloatDataBuffer floats = computedIssueWeights.rawData().asFloats();
+                FloatDataBuffer floats = computedIssueWeights.rawData().asFloats();
 
-            for (int i = 0; i < floats.size(); i++) {
-                System.out.println("Weight issue" + issue.issueIdx + " data["+ i +"] " + floats.getFloat(i));
+                for (int i = 0; i < floats.size(); i++) {
+                    System.out.println("Weight issue" + issue.issueIdx + " data[" + i + "] " + floats.getFloat(i));
+                }
             }
         }
 
-        Tensor<?> computedWeights = session.runner().fetch(tfUtility.weights).run().get(0);
-        System.out.println("Weight is " + computedWeights);
+        try (Tensor<?> computedWeights = session.runner().fetch(tfUtility.weights).run().get(0)) {
+            System.out.println("Weight is " + computedWeights);
 
-        FloatDataBuffer floats = computedWeights.rawData().asFloats();
+            FloatDataBuffer floats = computedWeights.rawData().asFloats();
 
-        for (int i = 0; i < floats.size(); i++) {
-            System.out.println("Weight data["+ i +"] " + floats.getFloat(i));
+            for (int i = 0; i < floats.size(); i++) {
+                System.out.println("Weight data[" + i + "] " + floats.getFloat(i));
+            }
         }
 
     }
 
     // Equivalent to the LinearAdditive UtilitySpace getWeights()
+    @Override
     public double[] computeWeights() {
-        Operand<TFloat32> normalizedWeights = TFUtility.normalizedWeights(this.tf, this.tfUtility.weights);
-
-        Tensor<?> computedWeights = session.runner().fetch(normalizedWeights).run().get(0);
-
-        FloatDataBuffer floats = computedWeights.rawData().asFloats();
-
-        return LongStream.range(0, floats.size()).mapToDouble(floats::getFloat).toArray();
+        try (Tensor<?> computedWeights = session.runner().fetch(normalizedWeights).run().get(0)) {
+            return toDoubles(computedWeights);
+        }
     }
 
     // Equivalent to the LinearAdditive UtilitySpace getUtilities()
+    @Override
     public double[] computeIssueWeights(int issueIndex) {
-        Operand<TFloat32> weightsClipped = TFIssue.weightsClipped(tf, tfUtility.issues[issueIndex].issueWeights);
+        try (Tensor<?> computedWeights = session.runner().fetch(issueWeightsClipped.get(issueIndex)).run().get(0)) {
+            return toDoubles(computedWeights);
+        }
+    }
 
-        Tensor<?> computedWeights = session.runner().fetch(weightsClipped).run().get(0);
+    /**
+     * Take a snapshot of the current weights and utilities of the model, with a single run for all issues.
+     * @return The snapshot.
+     */
+    @Override
+    public UtilityTable computeSnapshot() {
+        Session.Runner runner = session.runner().fetch(normalizedWeights);
+        for (Operand<TFloat32> weightsClipped : issueWeightsClipped) {
+            runner.fetch(weightsClipped);
+        }
 
-        FloatDataBuffer floats = computedWeights.rawData().asFloats();
+        List<Tensor<?>> results = runner.run();
+
+        try {
+            double[][] utilities = new double[issueWeightsClipped.size()][];
+            for (int i = 0; i < utilities.length; i++) {
+                utilities[i] = toDoubles(results.get(i + 1));
+            }
+
+            return new UtilityTable(toDoubles(results.get(0)), utilities);
+        } finally {
+            Helper.closeAll(results);
+        }
+    }
+
+    private static double[] toDoubles(Tensor<?> tensor) {
+        FloatDataBuffer floats = tensor.rawData().asFloats();
 
         return LongStream.range(0, floats.size()).mapToDouble(floats::getFloat).toArray();
     }
+
+    /**
+     * Release the native tf session and graph. The model can not be used anymore afterwards.
+     */
+    @Override
+    public void close() {
+        session.close();
+        graph.close();
+        tfUtility.close();
+        actualBuffer.close();
+        actualBatchBuffers.close();
+    }
 }
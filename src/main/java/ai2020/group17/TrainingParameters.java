@@ -0,0 +1,224 @@
+package ai2020.group17;
+
+import java.util.Random;
+
+/**
+ * Immutable set of parameters that control how a {@link UtilityModel} and the
+ * {@link TFLinearAdditiveOpponentModel} around it are trained.
+ *
+ * Use the {@code with...} methods to derive a modified copy, e.g.
+ * {@code TrainingParameters.DEFAULT.withBatchSize(32)}.
+ */
+public class TrainingParameters {
+
+    /**
+     * How the training examples are fed to the model.
+     */
+    public enum TrainingMode {
+        // One session run and gradient step per training example (the original behaviour)
+        PER_EXAMPLE,
+
+        // One session run and gradient step per mini-batch of training examples
+        MINI_BATCH
+    }
+
+    /**
+     * Which implementation of the {@link UtilityModel} is used.
+     */
+    public enum Backend {
+        // TFUtilityModel, the reference implementation
+        TENSORFLOW,
+
+        // TFGatherUtilityModel, looks up the utilities by index instead of with one hot vectors
+        TENSORFLOW_GATHER,
+
+        // JavaUtilityModel, computes the same in plain java
+        JAVA
+    }
+
+    /**
+     * Per example training on the one hot tensorflow backend, replaying the full history, like the models were
+     * trained before the mini-batch mode was added. {@link TrainingMode#MINI_BATCH} uses batches of 16 examples.
+     */
+    public static final TrainingParameters DEFAULT = new TrainingParameters(Backend.TENSORFLOW, TrainingMode.PER_EXAMPLE, 16,
+            ReplayBuffer.UNBOUNDED, ReplayBuffer.SamplingPolicy.RECENT);
+
+    private final Backend backend;
+
+    private final TrainingMode mode;
+
+    // Number of examples per gradient step in MINI_BATCH mode, 0 means the full training set
+    private final int batchSize;
+
+    // Number of earlier examples replayed per training step, see ReplayBuffer
+    private final int replayBufferSize;
+    private final ReplayBuffer.SamplingPolicy replayPolicy;
+
+    // Gradient descent learning rate, and the maximum number of passes over the training data per call to train
+    private final float learningRate;
+    private final int maxEpochs;
+
+    // Training stops early when the loss of an epoch improves by less than this fraction of the loss of the
+    // previous epoch, 0 disables early stopping. See EpochControl.
+    private final double tolerance;
+
+    // Time budget per call to train in ms, 0 means no budget
+    private final long budgetMs;
+
+    public TrainingParameters(Backend backend, TrainingMode mode, int batchSize, int replayBufferSize,
+                              ReplayBuffer.SamplingPolicy replayPolicy) {
+        this(backend, mode, batchSize, replayBufferSize, replayPolicy,
+                TFUtilityModel.LEARNING_RATE, TFUtilityModel.EPOCHS, 0, 0);
+    }
+
+    public TrainingParameters(Backend backend, TrainingMode mode, int batchSize, int replayBufferSize,
+                              ReplayBuffer.SamplingPolicy replayPolicy, float learningRate, int maxEpochs,
+                              double tolerance, long budgetMs) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("batchSize must be >= 0, got " + batchSize);
+        }
+        if (replayBufferSize < ReplayBuffer.UNBOUNDED) {
+            throw new IllegalArgumentException("replayBufferSize must be >= 0 or unbounded, got " + replayBufferSize);
+        }
+        if (!(learningRate > 0)) {
+            throw new IllegalArgumentException("learningRate must be > 0, got " + learningRate);
+        }
+        if (maxEpochs < 1) {
+            throw new IllegalArgumentException("maxEpochs must be >= 1, got " + maxEpochs);
+        }
+        if (!(tolerance >= 0)) {
+            throw new IllegalArgumentException("tolerance must be >= 0, got " + tolerance);
+        }
+        if (budgetMs < 0) {
+            throw new IllegalArgumentException("budgetMs must be >= 0, got " + budgetMs);
+        }
+
+        this.backend = backend;
+        this.mode = mode;
+        this.batchSize = batchSize;
+        this.replayBufferSize = replayBufferSize;
+        this.replayPolicy = replayPolicy;
+        this.learningRate = learningRate;
+        this.maxEpochs = maxEpochs;
+        this.tolerance = tolerance;
+        this.budgetMs = budgetMs;
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    public TrainingMode getMode() {
+        return mode;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getReplayBufferSize() {
+        return replayBufferSize;
+    }
+
+    public ReplayBuffer.SamplingPolicy getReplayPolicy() {
+        return replayPolicy;
+    }
+
+    public float getLearningRate() {
+        return learningRate;
+    }
+
+    public int getMaxEpochs() {
+        return maxEpochs;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public long getBudgetMs() {
+        return budgetMs;
+    }
+
+    /**
+     * @param random Source of randomness for the sampling policy.
+     * @return A new, empty replay buffer with the configured size and policy.
+     */
+    public ReplayBuffer createReplayBuffer(Random random) {
+        return createReplayBuffer(random, null);
+    }
+
+    /**
+     * @param random Source of randomness for the sampling policy.
+     * @param packing Packing of the bids, so kept examples of the same bid share their int[] bid. May be null.
+     * @return A new, empty replay buffer with the configured size and policy.
+     */
+    public ReplayBuffer createReplayBuffer(Random random, PackedBid.Layout packing) {
+        return new ReplayBuffer(replayBufferSize, replayPolicy, random, packing);
+    }
+
+    /**
+     * @param issuesOptions The shape of the domain, see {@link TFUtilityModel#TFUtilityModel(int[])}.
+     * @return A new, untrained utility model of the configured backend.
+     */
+    public UtilityModel createUtilityModel(int[] issuesOptions) {
+        switch (backend) {
+            case TENSORFLOW:
+                return new TFUtilityModel(issuesOptions, this);
+            case TENSORFLOW_GATHER:
+                return new TFGatherUtilityModel(issuesOptions, this);
+            case JAVA:
+                return new JavaUtilityModel(issuesOptions, this);
+            default:
+                throw new IllegalStateException("Unknown backend " + backend);
+        }
+    }
+
+    public TrainingParameters withBackend(Backend backend) {
+        return new TrainingParameters(backend, mode, batchSize, replayBufferSize, replayPolicy,
+                learningRate, maxEpochs, tolerance, budgetMs);
+    }
+
+    public TrainingParameters withMode(TrainingMode mode) {
+        return new TrainingParameters(backend, mode, batchSize, replayBufferSize, replayPolicy,
+                learningRate, maxEpochs, tolerance, budgetMs);
+    }
+
+    public TrainingParameters withBatchSize(int batchSize) {
+        return new TrainingParameters(backend, mode, batchSize, replayBufferSize, replayPolicy,
+                learningRate, maxEpochs, tolerance, budgetMs);
+    }
+
+    public TrainingParameters withReplayBuffer(int replayBufferSize, ReplayBuffer.SamplingPolicy replayPolicy) {
+        return new TrainingParameters(backend, mode, batchSize, replayBufferSize, replayPolicy,
+                learningRate, maxEpochs, tolerance, budgetMs);
+    }
+
+    public TrainingParameters withLearningRate(float learningRate) {
+        return new TrainingParameters(backend, mode, batchSize, replayBufferSize, replayPolicy,
+                learningRate, maxEpochs, tolerance, budgetMs);
+    }
+
+    public TrainingParameters withMaxEpochs(int maxEpochs) {
+        return new TrainingParameters(backend, mode, batchSize, replayBufferSize, replayPolicy,
+                learningRate, maxEpochs, tolerance, budgetMs);
+    }
+
+    /**
+     * @param tolerance Minimum relative improvement of the loss per epoch, 0 disables early stopping.
+     * @param budgetMs Time budget per call to train in ms, 0 means no budget.
+     * @return Copy with the given early stopping parameters.
+     */
+    public TrainingParameters withEarlyStopping(double tolerance, long budgetMs) {
+        return new TrainingParameters(backend, mode, batchSize, replayBufferSize, replayPolicy,
+                learningRate, maxEpochs, tolerance, budgetMs);
+    }
+
+    @Override
+    public String toString() {
+        return "TrainingParameters [backend=" + backend + ", mode=" + mode + ", batchSize=" + batchSize
+                + ", replayBufferSize=" + replayBufferSize + ", replayPolicy=" + replayPolicy
+                + ", learningRate=" + learningRate + ", maxEpochs=" + maxEpochs + ", tolerance=" + tolerance
+                + ", budgetMs=" + budgetMs + "]";
+    }
+}
@@ -0,0 +1,78 @@
+package ai2020.group17;
+
+import java.util.List;
+
+/**
+ * A trainable linear additive utility model of int[] bids.
+ *
+ * The model consists of a utility per option per issue, clipped between 0 and 1, and relative weights per issue
+ * that are normalized to sum to 1. {@link TFUtilityModel} is the tensorflow reference implementation.
+ */
+public interface UtilityModel extends AutoCloseable {
+
+    // Default number of bids that predictBatch feeds to the model at once
+    int PREDICT_CHUNK_SIZE = 1024;
+
+    /**
+     * Train the model on the given examples.
+     * @param trainingExamples The examples to train on.
+     */
+    void train(List<TFUtilityModel.TrainingExample> trainingExamples);
+
+    /**
+     * Compute the prediction for a bid.
+     * @param options input bid
+     * @return predicted utility
+     */
+    float predict(int[] options);
+
+    /**
+     * Compute the predictions for many bids, see {@link #predictBatch(int[][], float[], int)}.
+     * @param bids The input bids.
+     * @param predictions Receives the predicted utility of {@code bids[i]} at index {@code i}.
+     */
+    default void predictBatch(int[][] bids, float[] predictions) {
+        predictBatch(bids, predictions, PREDICT_CHUNK_SIZE);
+    }
+
+    /**
+     * Compute the predictions for many bids, in chunks of at most {@code chunkSize} bids per run of the model.
+     * Larger chunks need fewer runs, but larger input buffers.
+     * @param bids The input bids.
+     * @param predictions Receives the predicted utility of {@code bids[i]} at index {@code i}.
+     * @param chunkSize The maximum number of bids per run.
+     */
+    default void predictBatch(int[][] bids, float[] predictions, int chunkSize) {
+        for (int i = 0; i < bids.length; i++) {
+            predictions[i] = predict(bids[i]);
+        }
+    }
+
+    // Equivalent to the LinearAdditive UtilitySpace getWeights()
+    double[] computeWeights();
+
+    // Equivalent to the LinearAdditive UtilitySpace getUtilities()
+    double[] computeIssueWeights(int issueIndex);
+
+    /**
+     * Take a snapshot of the current weights and utilities of the model.
+     * @return The snapshot.
+     */
+    default UtilityTable computeSnapshot() {
+        double[] weights = computeWeights();
+
+        double[][] utilities = new double[weights.length][];
+        for (int i = 0; i < weights.length; i++) {
+            utilities[i] = computeIssueWeights(i);
+        }
+
+        return new UtilityTable(weights, utilities);
+    }
+
+    /**
+     * Release any (native) resources held by the model. The model can not be used anymore afterwards.
+     */
+    @Override
+    default void close() {
+    }
+}
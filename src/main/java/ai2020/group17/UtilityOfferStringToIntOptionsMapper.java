@@ -6,6 +6,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.Domain;
 import geniusweb.issuevalue.Value;
 import geniusweb.issuevalue.ValueSet;
 
@@ -24,6 +26,9 @@ public class UtilityOfferStringToIntOptionsMapper {
 
     int[] issuesOptions;
 
+    // Bit layout of packed bids
+    private final PackedBid.Layout packing;
+
     /**
      * Instantiate mapper.
      * @param issues The domain.
@@ -46,6 +51,22 @@ public class UtilityOfferStringToIntOptionsMapper {
         }
 
         issuesOptions = issueOptionIndices.stream().mapToInt(Map::size).toArray();
+        packing = new PackedBid.Layout(issuesOptions);
+    }
+
+    /**
+     * Instantiate mapper for all issues of a domain.
+     * @param domain The domain.
+     * @return The mapper.
+     */
+    public static UtilityOfferStringToIntOptionsMapper forDomain(Domain domain) {
+        Map<String, ValueSet> issuesOptions = new HashMap<>();
+
+        for (String issue: domain.getIssues()) {
+            issuesOptions.put(issue, domain.getValues(issue));
+        }
+
+        return new UtilityOfferStringToIntOptionsMapper(issuesOptions);
     }
 
     /**
@@ -66,6 +87,80 @@ public class UtilityOfferStringToIntOptionsMapper {
         return options;
     }
 
+    /**
+     * Convert a String, Value bid (like geniusweb bid) to a packed bid, without an intermediate int[] bid.
+     * @param input The input bid.
+     * @return The packed bid representing the {@code input}, see {@link #getPacking()}, or null if
+     *         {@code input} is not a complete bid of the domain (a missing issue, or an unknown issue or value).
+     */
+    public PackedBid pack(Map<String, Value> input) {
+        if (input.size() != issueNames.size()) {
+            return null;
+        }
+
+        long[] words = new long[packing.getWordCount()];
+
+        for (Map.Entry<String, Value> issue: input.entrySet()) {
+            int issueIndex = getIssueIndex(issue.getKey());
+            int optionIndex = issueIndex < 0 ? -1 : getOptionIndex(issueIndex, issue.getValue());
+
+            if (optionIndex < 0) {
+                return null;
+            }
+
+            packing.set(words, issueIndex, optionIndex);
+        }
+
+        return packing.of(words);
+    }
+
+    /**
+     * @return The bit layout of the packed bids of this mapper.
+     */
+    public PackedBid.Layout getPacking() {
+        return packing;
+    }
+
+    /**
+     * Convert an int[] bid to a geniusweb bid.
+     * @param options The int[] bid.
+     * @return The bid represented by {@code options}.
+     */
+    public Bid convertToBid(int[] options) {
+        Map<String, Value> values = new HashMap<>();
+
+        for (int i = 0; i < options.length; i++) {
+            values.put(issueNames.get(i), issueOptionValues.get(i).get(options[i]));
+        }
+
+        return new Bid(values);
+    }
+
+    /**
+     * @param other Another mapper.
+     * @return true iff both mappers map every issue and option to the same index.
+     */
+    public boolean hasSameIndices(UtilityOfferStringToIntOptionsMapper other) {
+        return other == this || (issueNames.equals(other.issueNames) && issueOptionValues.equals(other.issueOptionValues));
+    }
+
+    /**
+     * @param issue The issue name.
+     * @return The index of the issue, or -1 if it is not part of the domain.
+     */
+    public int getIssueIndex(String issue) {
+        return issueIndices.getOrDefault(issue, -1);
+    }
+
+    /**
+     * @param issueIndex The index of the issue of which the option is part of.
+     * @param value The option.
+     * @return The index of the option, or -1 if it is not an option of the issue.
+     */
+    public int getOptionIndex(int issueIndex, Value value) {
+        return issueOptionIndices.get(issueIndex).getOrDefault(value, -1);
+    }
+
     /**
      * Map an issue index to the issue name.
      * @param issueIndex The issue index.
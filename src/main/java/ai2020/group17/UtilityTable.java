@@ -0,0 +1,133 @@
+package ai2020.group17;
+
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.Value;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.profile.utilityspace.ValueSetUtilities;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Immutable primitive snapshot of a linear additive utility function, indexed like the int[] bids of an
+ * {@link UtilityOfferStringToIntOptionsMapper}.
+ *
+ * The arrays are shared without copying for speed, they must not be modified.
+ */
+public class UtilityTable {
+
+    // The (normalized) relative weight per issue
+    final double[] weights;
+
+    // The utility per issue per option
+    final double[][] utilities;
+
+    public UtilityTable(double[] weights, double[][] utilities) {
+        if (weights.length != utilities.length) {
+            throw new IllegalArgumentException("Got " + weights.length + " weights for " + utilities.length + " issues");
+        }
+
+        this.weights = weights;
+        this.utilities = utilities;
+    }
+
+    /**
+     * Convert a geniusweb utility space to a table. Reuses the snapshot of a
+     * {@link TFLinearAdditiveOpponentModel} if its mapper has the same indices.
+     * @param space The utility space.
+     * @param mapper Mapper that defines the issue and option indices.
+     * @return The table.
+     */
+    public static UtilityTable of(LinearAdditive space, UtilityOfferStringToIntOptionsMapper mapper) {
+        if (space instanceof TFLinearAdditiveOpponentModel) {
+            TFLinearAdditiveOpponentModel model = (TFLinearAdditiveOpponentModel) space;
+
+            if (mapper.hasSameIndices(model.getMapper())) {
+                return model.getSnapshot();
+            }
+        }
+
+        int nIssues = mapper.issuesOptions.length;
+
+        double[] weights = new double[nIssues];
+        double[][] utilities = new double[nIssues][];
+
+        Map<String, ValueSetUtilities> spaceUtilities = space.getUtilities();
+        Map<String, BigDecimal> spaceWeights = space.getWeights();
+
+        for (int i = 0; i < nIssues; i++) {
+            String issue = mapper.mapIndexToIssue(i);
+
+            weights[i] = spaceWeights.get(issue).doubleValue();
+            utilities[i] = new double[mapper.issuesOptions[i]];
+
+            for (int j = 0; j < utilities[i].length; j++) {
+                Value value = mapper.mapOptionIndexToValue(i, j);
+                utilities[i][j] = spaceUtilities.get(issue).getUtility(value).doubleValue();
+            }
+        }
+
+        return new UtilityTable(weights, utilities);
+    }
+
+    public int getIssueCount() {
+        return weights.length;
+    }
+
+    public double getWeight(int issueIndex) {
+        return weights[issueIndex];
+    }
+
+    public double getUtility(int issueIndex, int optionIndex) {
+        return utilities[issueIndex][optionIndex];
+    }
+
+    /**
+     * @return The contribution of choosing option {@code optionIndex} for issue {@code issueIndex} to the total utility.
+     */
+    public double getWeightedUtility(int issueIndex, int optionIndex) {
+        return weights[issueIndex] * utilities[issueIndex][optionIndex];
+    }
+
+    /**
+     * Compute the utility of a complete int[] bid.
+     * @param options The bid.
+     * @return The utility.
+     */
+    public double getUtility(int[] options) {
+        double utility = 0;
+
+        for (int i = 0; i < weights.length; i++) {
+            utility += weights[i] * utilities[i][options[i]];
+        }
+
+        return utility;
+    }
+
+    /**
+     * Compute the utility of a geniusweb bid, like {@link LinearAdditive#getUtility(Bid)}: issues that are
+     * missing from the bid, or have an unknown value, contribute nothing.
+     * @param bid The bid.
+     * @param mapper Mapper that defines the issue and option indices of this table.
+     * @return The utility.
+     */
+    public double getUtility(Bid bid, UtilityOfferStringToIntOptionsMapper mapper) {
+        double utility = 0;
+
+        for (Map.Entry<String, Value> issueValue : bid.getIssueValues().entrySet()) {
+            int issueIndex = mapper.getIssueIndex(issueValue.getKey());
+            if (issueIndex < 0) {
+                continue;
+            }
+
+            int optionIndex = mapper.getOptionIndex(issueIndex, issueValue.getValue());
+            if (optionIndex < 0) {
+                continue;
+            }
+
+            utility += getWeightedUtility(issueIndex, optionIndex);
+        }
+
+        return utility;
+    }
+}
@@ -0,0 +1,94 @@
+package ai2020.group17;
+
+import geniusweb.issuevalue.Bid;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Evaluates the bids of a voting round against a precomputed table of our utilities.
+ *
+ * The utility of each bid is cached, because the same bids are offered again in later rounds. The cache is keyed
+ * by the packed bid, which is smaller and cheaper to hash than the geniusweb bid. Incomplete bids are not cached.
+ * Large sets of bids are evaluated in parallel on the common fork join pool. Thread safe.
+ */
+public class VoteEvaluator {
+
+    // Minimum number of bids to evaluate in parallel
+    static final int PARALLEL_THRESHOLD = 64;
+
+    // Maximum number of cached utilities, the cache is cleared when it is full
+    static final int MAX_CACHE_SIZE = 100000;
+
+    private final UtilityOfferStringToIntOptionsMapper mapper;
+    private final UtilityTable myTable;
+    private final boolean parallel;
+
+    private final Map<PackedBid, Double> cache = new ConcurrentHashMap<>();
+
+    /**
+     * @param myTable The table of our profile.
+     * @param mapper Mapper that defines the issue and option indices of {@code myTable}.
+     * @param parallel Whether large sets of bids are evaluated in parallel.
+     */
+    public VoteEvaluator(UtilityTable myTable, UtilityOfferStringToIntOptionsMapper mapper, boolean parallel) {
+        this.mapper = mapper;
+        this.myTable = myTable;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Compute our utility of a bid, like {@link geniusweb.profile.utilityspace.LinearAdditive#getUtility(Bid)}:
+     * issues that are missing from the bid, or have an unknown value, contribute nothing.
+     * @param bid The bid.
+     * @return Our utility of the bid.
+     */
+    public double getUtility(Bid bid) {
+        PackedBid key = mapper.pack(bid.getIssueValues());
+
+        if (key == null) {
+            return myTable.getUtility(bid, mapper);
+        }
+
+        Double utility = cache.get(key);
+
+        if (utility == null) {
+            utility = myTable.getUtility(bid, mapper);
+
+            if (cache.size() >= MAX_CACHE_SIZE) {
+                cache.clear();
+            }
+            cache.put(key, utility);
+        }
+
+        return utility;
+    }
+
+    /**
+     * @param bid The bid, may be null.
+     * @param threshold The minimum utility.
+     * @return true iff the bid is not null and our utility of it is at least {@code threshold}.
+     */
+    public boolean isGood(Bid bid, double threshold) {
+        return bid != null && getUtility(bid) >= threshold;
+    }
+
+    /**
+     * Select the good bids.
+     * @param bids The bids to evaluate.
+     * @param threshold The minimum utility.
+     * @return The bids that are good, see {@link #isGood(Bid, double)}, in the same order.
+     */
+    public List<Bid> filterGood(List<Bid> bids, double threshold) {
+        Stream<Bid> stream = bids.stream();
+
+        if (parallel && bids.size() >= PARALLEL_THRESHOLD) {
+            stream = stream.parallel();
+        }
+
+        return stream.filter(bid -> isGood(bid, threshold)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,189 @@
+package ai2020.group17;
+
+import java.util.Arrays;
+
+/**
+ * Chooses the minPower and maxPower of each of our votes to maximise our expected utility of the agreement.
+ *
+ * The acceptance of each bid by each opponent is sampled from its predicted acceptance probability. In each
+ * sample we join the coalition of a bid only if its power lies within the powers of our vote, and the valid
+ * coalition with the largest power wins. Our utility of a sample is our utility of the winning bid if we are
+ * part of its coalition, and 0 otherwise.
+ *
+ * The planner runs an anytime local search that changes the powers of one vote at a time, and returns the best
+ * plan found when the time budget runs out. All plans are evaluated on the same samples, so they are compared
+ * without sampling noise. When the budget runs out while sampling, fewer samples are used. Not thread safe.
+ */
+public class VotePlanner {
+
+    // Number of sampled acceptance outcomes
+    static final int SAMPLES = 256;
+
+    // The range of powers we accept for any coalition
+    private final int minPower;
+    private final int maxPower;
+
+    private final int myPower;
+    private final Sampler sampler;
+
+    /**
+     * The powers of each vote.
+     */
+    public static class Plan {
+        final int[] minPowers;
+        final int[] maxPowers;
+
+        // Expected utility of the agreement, estimated on the samples
+        final double expectedUtility;
+
+        Plan(int[] minPowers, int[] maxPowers, double expectedUtility) {
+            this.minPowers = minPowers;
+            this.maxPowers = maxPowers;
+            this.expectedUtility = expectedUtility;
+        }
+
+        public int getMinPower(int bidIndex) {
+            return minPowers[bidIndex];
+        }
+
+        public int getMaxPower(int bidIndex) {
+            return maxPowers[bidIndex];
+        }
+
+        public double getExpectedUtility() {
+            return expectedUtility;
+        }
+    }
+
+    /**
+     * @param minPower The minimum power of any of our votes, also the minimum power of a valid coalition.
+     * @param maxPower The maximum power of any of our votes.
+     * @param myPower Our power.
+     * @param sampler Source of randomness for the acceptance samples.
+     */
+    public VotePlanner(int minPower, int maxPower, int myPower, Sampler sampler) {
+        this.minPower = minPower;
+        this.maxPower = maxPower;
+        this.myPower = myPower;
+        this.sampler = sampler;
+    }
+
+    /**
+     * Plan the powers of our votes.
+     * @param myUtilities Our utility per bid we vote for.
+     * @param acceptance The probability that each opponent accepts each bid, per bid per opponent.
+     * @param opponentPowers The power of each opponent.
+     * @param budgetMs The time budget in ms.
+     * @return The best plan that was found within the budget.
+     */
+    public Plan plan(double[] myUtilities, double[][] acceptance, int[] opponentPowers, long budgetMs) {
+        long deadline = System.nanoTime() + budgetMs * 1000000;
+
+        int nBids = myUtilities.length;
+
+        // Sampled power of the opponents that accept, per sample per bid
+        int[][] acceptedPowers = new int[SAMPLES][nBids];
+        int totalPower = myPower;
+
+        for (int power : opponentPowers) {
+            totalPower += power;
+        }
+
+        for (int s = 0; s < SAMPLES; s++) {
+            for (int b = 0; b < nBids; b++) {
+                for (int j = 0; j < opponentPowers.length; j++) {
+                    if (sampler.nextDouble() < acceptance[b][j]) {
+                        acceptedPowers[s][b] += opponentPowers[j];
+                    }
+                }
+            }
+
+            // With many bids and opponents sampling alone can exceed the budget, so plan on fewer samples
+            if (System.nanoTime() >= deadline) {
+                acceptedPowers = Arrays.copyOf(acceptedPowers, s + 1);
+                break;
+            }
+        }
+
+        // Start with the widest range for every vote
+        int[] minPowers = new int[nBids];
+        int[] maxPowers = new int[nBids];
+
+        for (int b = 0; b < nBids; b++) {
+            minPowers[b] = minPower;
+            maxPowers[b] = maxPower;
+        }
+
+        double best = evaluate(myUtilities, acceptedPowers, minPowers, maxPowers);
+
+        // Any maxPower from the total power on is equivalent, so maxPower itself represents them
+        int highestMinPower = Math.min(maxPower, totalPower);
+
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+
+            for (int b = 0; b < nBids; b++) {
+                int bestMin = minPowers[b];
+                int bestMax = maxPowers[b];
+
+                for (int min = minPower; min <= highestMinPower; min++) {
+                    for (int max = min; max <= highestMinPower + 1; max++) {
+                        if (System.nanoTime() > deadline) {
+                            minPowers[b] = bestMin;
+                            maxPowers[b] = bestMax;
+
+                            return new Plan(minPowers, maxPowers, best);
+                        }
+
+                        minPowers[b] = min;
+                        maxPowers[b] = max > highestMinPower ? maxPower : max;
+
+                        double value = evaluate(myUtilities, acceptedPowers, minPowers, maxPowers);
+
+                        if (value > best + 1e-12) {
+                            best = value;
+                            bestMin = minPowers[b];
+                            bestMax = maxPowers[b];
+                            improved = true;
+                        }
+                    }
+                }
+
+                minPowers[b] = bestMin;
+                maxPowers[b] = bestMax;
+            }
+        }
+
+        return new Plan(minPowers, maxPowers, best);
+    }
+
+    // Average utility of the plan over the samples
+    private double evaluate(double[] myUtilities, int[][] acceptedPowers, int[] minPowers, int[] maxPowers) {
+        double total = 0;
+
+        for (int[] sample : acceptedPowers) {
+            int winner = -1;
+            int winnerPower = minPower - 1;
+            boolean joined = false;
+
+            for (int b = 0; b < sample.length; b++) {
+                int withUs = sample[b] + myPower;
+                boolean join = withUs >= minPowers[b] && withUs <= maxPowers[b];
+                int power = join ? withUs : sample[b];
+
+                if (power > winnerPower) {
+                    winner = b;
+                    winnerPower = power;
+                    joined = join;
+                }
+            }
+
+            if (winner >= 0 && joined) {
+                total += myUtilities[winner];
+            }
+        }
+
+        return total / acceptedPowers.length;
+    }
+}
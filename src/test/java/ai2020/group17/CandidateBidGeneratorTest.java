@@ -0,0 +1,80 @@
+package ai2020.group17;
+
+import geniusweb.actions.PartyId;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static ai2020.group17.PrimitiveBidGeneratorTest.domain;
+import static ai2020.group17.PrimitiveBidGeneratorTest.myProfile;
+import static ai2020.group17.PrimitiveBidGeneratorTest.opponent;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CandidateBidGeneratorTest {
+
+    private static final PartyId OTHER = new PartyId("other");
+
+    private final UtilityOfferStringToIntOptionsMapper mapper = UtilityOfferStringToIntOptionsMapper.forDomain(domain);
+    private final PrimitiveBidGenerator generator = new PrimitiveBidGenerator(myProfile, mapper, new Sampler(1));
+
+    private final UtilityTable opponentTable = UtilityTable.of(opponent, mapper);
+    private final UtilityTable[] targets = {opponentTable};
+    private final BidObjective objective = BidObjective.SUMMED_UTILITY.create(Map.of(OTHER, opponentTable), Map.of(OTHER, 1));
+
+    @Test
+    void bestBidsAreSortedAndIndependentOfParallelism() {
+        int n = 1000;
+
+        int[][] all = new CandidateBidGenerator(generator, new Sampler(5), false).generateBestBids(targets, 0.6, n, n, objective);
+        int[][] top = new CandidateBidGenerator(generator, new Sampler(5), true).generateBestBids(targets, 0.6, n, 10, objective);
+
+        assertEquals(n, all.length);
+        for (int i = 1; i < n; i++) {
+            assertTrue(objective.score(all[i - 1]) >= objective.score(all[i]));
+        }
+
+        assertEquals(10, top.length);
+        for (int i = 0; i < top.length; i++) {
+            assertArrayEquals(all[i], top[i]);
+        }
+    }
+
+    @Test
+    void anytimeBestBidsAreSortedAndGeneratedWithoutBudget() {
+        CandidateBidGenerator candidates = new CandidateBidGenerator(generator, new Sampler(7), true);
+
+        int[][] none = candidates.generateBestBidsWithin(targets, 0.6, 0, 10, objective);
+        int[][] some = candidates.generateBestBidsWithin(targets, 0.6, 20, 10, objective);
+
+        assertEquals(10, none.length);
+        assertEquals(10, some.length);
+        for (int i = 1; i < some.length; i++) {
+            assertTrue(objective.score(some[i - 1]) >= objective.score(some[i]));
+        }
+    }
+
+    @Test
+    void largeParallelBatchMatchesSequentialBatch() {
+        int n = 200000;
+        int[][][] best = new int[2][][];
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            CandidateBidGenerator candidates = new CandidateBidGenerator(generator, new Sampler(6), parallel);
+
+            long start = System.nanoTime();
+            best[parallel ? 1 : 0] = candidates.generateBestBids(targets, 0.6, n, 5, objective);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.println((parallel ? "parallel (" + Runtime.getRuntime().availableProcessors() + " cores)" : "sequential")
+                    + ": " + Math.round(n / seconds) + " candidates/sec");
+        }
+
+        assertEquals(5, best[1].length);
+        for (int i = 0; i < best[0].length; i++) {
+            assertArrayEquals(best[0][i], best[1][i]);
+            assertTrue(generator.getMyTable().getUtility(best[1][i]) >= 0.6 - 1e-9);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ai2020.group17;
+
+import geniusweb.actions.PartyId;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static ai2020.group17.PrimitiveBidGeneratorTest.domain;
+import static ai2020.group17.PrimitiveBidGeneratorTest.myProfile;
+import static ai2020.group17.PrimitiveBidGeneratorTest.opponent;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CoalitionTrackerTest {
+
+    private static final PartyId CLOSE = new PartyId("close");
+    private static final PartyId FAR = new PartyId("far");
+    private static final PartyId SELF = new PartyId("self");
+
+    private final UtilityOfferStringToIntOptionsMapper mapper = UtilityOfferStringToIntOptionsMapper.forDomain(domain);
+
+    @Test
+    void selectsClosestOpponentsUntilMinPower() {
+        CoalitionTracker tracker = new CoalitionTracker(myProfile, mapper);
+
+        tracker.update(Map.of(FAR, opponent, SELF, myProfile));
+
+        assertEquals(0, tracker.getDistance(SELF), 1e-12);
+        assertEquals(Helper.distance(myProfile, opponent), tracker.getDistance(FAR), 1e-9);
+
+        Map<PartyId, Integer> powers = Map.of(FAR, 1, SELF, 2);
+
+        assertEquals(List.of(SELF), tracker.selectTargets(powers, 2));
+        assertEquals(List.of(SELF, FAR), tracker.selectTargets(powers, 3));
+        assertEquals(List.of(), tracker.selectTargets(powers, 0));
+    }
+
+    @Test
+    void recomputesOnlyChangedModels() {
+        CoalitionTracker tracker = new CoalitionTracker(myProfile, mapper);
+
+        tracker.update(Map.of(CLOSE, opponent, FAR, opponent));
+        UtilityTable farTable = tracker.getTable(FAR);
+
+        // CLOSE gets a new model, FAR keeps the same model
+        LinearAdditive closer = PrimitiveBidGeneratorTest.space(
+                Map.of("Menu", 0.2, "Cost", 0.5, "Music", 0.3),
+                Map.of("Fish", 0.9, "Meat", 0.3,
+                        "2000 EUR", 1.0, "5000 EUR", 0.6, "9000 EUR", 0.1,
+                        "Band", 0.8, "DJ", 1.0, "None", 0.1));
+
+        tracker.update(Map.of(CLOSE, closer, FAR, opponent));
+
+        assertSame(farTable, tracker.getTable(FAR));
+        assertEquals(List.of(CLOSE, FAR), tracker.selectTargets(Map.of(), 2));
+
+        // Opponents without a model are forgotten
+        tracker.update(Map.of(FAR, opponent));
+
+        assertEquals(List.of(FAR), tracker.selectTargets(Map.of(), 2));
+    }
+}
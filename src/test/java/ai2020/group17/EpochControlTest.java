@@ -0,0 +1,99 @@
+package ai2020.group17;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static ai2020.group17.TFGatherUtilityModelTest.randomExamples;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EpochControlTest {
+
+    private static final int[] ISSUES_OPTIONS = {3, 4, 2};
+
+    @Test
+    void stopsAfterMaxEpochsWithoutEarlyStopping() {
+        EpochControl epochs = new EpochControl(TrainingParameters.DEFAULT.withMaxEpochs(3));
+        assertFalse(epochs.tracksLoss());
+
+        assertTrue(epochs.nextEpoch());
+        assertTrue(epochs.nextEpoch());
+        assertFalse(epochs.nextEpoch());
+        assertEquals(3, epochs.getEpochs());
+    }
+
+    @Test
+    void stopsWhenTheLossConverges() {
+        EpochControl epochs = new EpochControl(TrainingParameters.DEFAULT.withEarlyStopping(0.1, 0));
+        assertTrue(epochs.tracksLoss());
+
+        epochs.addLoss(6);
+        epochs.addLoss(4);
+        assertTrue(epochs.nextEpoch());
+
+        // Improved by half
+        epochs.addLoss(5);
+        assertTrue(epochs.nextEpoch());
+
+        // Improved by less than a tenth
+        epochs.addLoss(4.8);
+        assertFalse(epochs.nextEpoch());
+    }
+
+    @Test
+    void stepsComputeTheLossOnlyWhenItIsTracked() {
+        int[] runs = new int[2];
+
+        EpochControl untracked = new EpochControl(TrainingParameters.DEFAULT.withEarlyStopping(0, 0));
+        untracked.step(() -> runs[0]++, () -> runs[1]++);
+        assertArrayEquals(new int[]{1, 0}, runs);
+
+        EpochControl tracked = new EpochControl(TrainingParameters.DEFAULT.withEarlyStopping(0.1, 0));
+        tracked.step(() -> runs[0]++, () -> 10);
+        tracked.step(() -> runs[0]++, () -> 10);
+        assertTrue(tracked.nextEpoch());
+
+        // The same loss again has converged
+        tracked.step(() -> runs[0]++, () -> 20);
+        assertFalse(tracked.nextEpoch());
+        assertArrayEquals(new int[]{1, 0}, runs);
+    }
+
+    @Test
+    void stopsWhenTheBudgetRunsOut() throws InterruptedException {
+        EpochControl epochs = new EpochControl(TrainingParameters.DEFAULT.withEarlyStopping(0, 1));
+
+        Thread.sleep(5);
+
+        assertFalse(epochs.nextEpoch());
+        assertEquals(1, epochs.getEpochs());
+    }
+
+    @Test
+    void backendsStopAtTheSameEpochAsTheCap() {
+        List<TFUtilityModel.TrainingExample> examples = randomExamples(new Random(1), ISSUES_OPTIONS, 40);
+
+        for (TrainingParameters.Backend backend : TrainingParameters.Backend.values()) {
+            TrainingParameters parameters = TrainingParameters.DEFAULT.withBackend(backend)
+                    .withMode(TrainingParameters.TrainingMode.MINI_BATCH).withBatchSize(8);
+
+            // A tolerance of 1 stops after the second epoch, as long as the loss isn't 0
+            try (UtilityModel earlyStopped = parameters.withEarlyStopping(1, 0).createUtilityModel(ISSUES_OPTIONS);
+                 UtilityModel capped = parameters.withMaxEpochs(2).createUtilityModel(ISSUES_OPTIONS)) {
+                earlyStopped.train(examples);
+                capped.train(examples);
+
+                assertArrayEquals(capped.computeWeights(), earlyStopped.computeWeights(), 1e-6, backend.toString());
+
+                for (int i = 0; i < ISSUES_OPTIONS.length; i++) {
+                    assertArrayEquals(capped.computeIssueWeights(i), earlyStopped.computeIssueWeights(i), 1e-6,
+                            backend.toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package ai2020.group17;
+
+import geniusweb.actions.Action;
+import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
+import geniusweb.actions.Votes;
+import geniusweb.connection.ConnectionEnd;
+import geniusweb.inform.ActionDone;
+import geniusweb.inform.Inform;
+import geniusweb.inform.Settings;
+import geniusweb.inform.Voting;
+import geniusweb.inform.YourTurn;
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.DiscreteValue;
+import geniusweb.issuevalue.Value;
+import geniusweb.profile.utilityspace.LinearAdditiveUtilitySpace;
+import geniusweb.profileconnection.ProfileConnectionFactory;
+import geniusweb.progress.ProgressRounds;
+import geniusweb.progress.ProgressTime;
+import geniusweb.references.Parameters;
+import geniusweb.references.ProfileRef;
+import geniusweb.references.ProtocolRef;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import tudelft.utilities.logging.Reporter;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Drives the party through whole MOPAC rounds, with the profile of {@link PrimitiveBidGeneratorTest#myProfile}.
+ */
+class Group17_MainTest {
+
+    private static final PartyId ME = new PartyId("party1");
+    private static final PartyId OTHER = new PartyId("other");
+
+    private static final URI PROFILE = URI.create("file:src/test/resources/partyprofile.json");
+
+    // The number of opening bids the party requests, its firstBestBids + 1
+    private static final int OPENING_BIDS = 6;
+
+    private final Bid bid = new Bid(Map.<String, Value>of("Menu", new DiscreteValue("Fish"), "Cost", new DiscreteValue("2000 EUR"),
+            "Music", new DiscreteValue("DJ")));
+
+    private final Reporter reporter = mock(Reporter.class);
+
+    @SuppressWarnings("unchecked")
+    private final ConnectionEnd<Inform, Action> connection = mock(ConnectionEnd.class);
+
+    private Group17_Main party;
+
+    @BeforeEach
+    void before() {
+        party = new Group17_Main(reporter);
+        party.connect(connection);
+    }
+
+    @AfterEach
+    void after() {
+        party.terminate();
+    }
+
+    private Settings settings(Parameters parameters) {
+        return new Settings(ME, new ProfileRef(PROFILE), new ProtocolRef("MOPAC"),
+                new ProgressRounds(50, 0, new Date(System.currentTimeMillis() + 60000)), parameters);
+    }
+
+    private List<Action> sentActions() throws Exception {
+        ArgumentCaptor<Action> actions = ArgumentCaptor.forClass(Action.class);
+        verify(connection, atLeastOnce()).send(actions.capture());
+
+        return actions.getAllValues();
+    }
+
+    @Test
+    void failedOpeningBidsFallBackToBidGeneration() throws Exception {
+        LinearAdditiveUtilitySpace space = (LinearAdditiveUtilitySpace) ProfileConnectionFactory.create(PROFILE, reporter)
+                .getProfile();
+
+        // The party gets this computation from the profile cache, it fails after the party has seen an offer
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<OpeningBids> failed = ProfileCache.get(PROFILE, space).getOpeningBids(OPENING_BIDS, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            throw new IllegalStateException("failed");
+        });
+
+        party.notifyChange(settings(new Parameters()));
+
+        // The opponent model is trained before our first turn, when the powers are not known yet
+        party.notifyChange(new ActionDone(new Offer(OTHER, bid)));
+
+        release.countDown();
+        assertThrows(CompletionException.class, failed::join);
+
+        party.notifyChange(new YourTurn());
+
+        List<Action> actions = sentActions();
+        assertEquals(1, actions.size());
+        assertTrue(actions.get(0) instanceof Offer);
+        verify(reporter).log(eq(Level.WARNING), eq("Failed to compute the opening bids"), any(Throwable.class));
+    }
+
+    private Settings timeSettings(long duration, Date start) {
+        // The bid budget is far beyond the deadline
+        return new Settings(ME, new ProfileRef(PROFILE), new ProtocolRef("MOPAC"), new ProgressTime(duration, start),
+                new Parameters().with("anytimeBidding", true).with("bidBudgetMs", 600000));
+    }
+
+    @Test
+    void timeBasedMOPACPastTheOpeningRounds() throws Exception {
+        // The deadline has passed, so the budget of the anytime offers is 0
+        party.notifyChange(timeSettings(1000, new Date(System.currentTimeMillis() - 5000)));
+
+        assertEquals(0, party.computeSafeRemainingMs());
+        assertEquals(0, party.computeBidBudgetMs());
+
+        for (int round = 0; round < 8; round++) {
+            party.notifyChange(new YourTurn());
+            Offer offer = (Offer) sentActions().get(2 * round);
+
+            party.notifyChange(new ActionDone(new Offer(OTHER, bid)));
+            party.notifyChange(new Voting(Arrays.asList(offer, new Offer(OTHER, bid)), Map.of(ME, 1, OTHER, 1)));
+
+            assertTrue(sentActions().get(2 * round + 1) instanceof Votes);
+        }
+
+        assertEquals(16, sentActions().size());
+    }
+
+    @Test
+    void bidBudgetIsCappedByTheSafeRemainingTime() {
+        party.notifyChange(timeSettings(60000, new Date()));
+
+        // The safe remaining time only decreases, so it is read first
+        long safeRemaining = party.computeSafeRemainingMs();
+        long budget = party.computeBidBudgetMs();
+
+        assertTrue(safeRemaining < 60000);
+        assertTrue(budget <= safeRemaining);
+    }
+
+    @Test
+    void progressWithoutTerminationTimeHasNoDeadline() {
+        party.notifyChange(new Settings(ME, new ProfileRef(PROFILE), new ProtocolRef("MOPAC"), new ProgressRounds(50, 0, null),
+                new Parameters().with("anytimeBidding", true).with("bidBudgetMs", 20)));
+
+        assertEquals(Long.MAX_VALUE, party.computeSafeRemainingMs());
+        assertEquals(20, party.computeBidBudgetMs());
+    }
+}
@@ -0,0 +1,91 @@
+package ai2020.group17;
+
+import org.junit.jupiter.api.Test;
+import org.tensorflow.ndarray.Shape;
+
+import java.util.List;
+import java.util.Random;
+
+import static ai2020.group17.TFGatherUtilityModelTest.randomExamples;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class InputBufferTest {
+
+    private static final int[] ISSUES_OPTIONS = {2, 3, 4};
+
+    @Test
+    void poolReusesBuffersOfTheLastSizes() {
+        try (InputBuffer.Pool<InputBuffer> pool = new InputBuffer.Pool<>(rows -> new InputBuffer(Shape.of(rows, 3)))) {
+            InputBuffer[] buffers = new InputBuffer[InputBuffer.Pool.SIZES];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = pool.get(i + 1);
+            }
+
+            for (int i = buffers.length - 1; i >= 0; i--) {
+                assertSame(buffers[i], pool.get(i + 1));
+            }
+
+            // Replaces the buffer of the last size, which was used least recently
+            InputBuffer other = pool.get(100);
+            for (int i = 0; i < buffers.length - 1; i++) {
+                assertSame(buffers[i], pool.get(i + 1));
+            }
+            assertSame(other, pool.get(100));
+            assertNotSame(buffers[buffers.length - 1], pool.get(buffers.length));
+        }
+    }
+
+    @Test
+    void reusedBuffersGiveTheSameModelAsSingleExampleBatches() {
+        List<TFUtilityModel.TrainingExample> examples = randomExamples(new Random(0), ISSUES_OPTIONS, 10);
+
+        TrainingParameters perExample = TrainingParameters.DEFAULT.withMode(TrainingParameters.TrainingMode.PER_EXAMPLE);
+        TrainingParameters batchesOfOne = TrainingParameters.DEFAULT.withMode(TrainingParameters.TrainingMode.MINI_BATCH)
+                .withBatchSize(1);
+
+        TFUtilityModel first = new TFUtilityModel(ISSUES_OPTIONS, perExample);
+        TFUtilityModel second = new TFUtilityModel(ISSUES_OPTIONS, batchesOfOne);
+
+        try {
+            first.train(examples);
+            second.train(examples);
+
+            UtilityTable firstTable = first.computeSnapshot();
+            UtilityTable secondTable = second.computeSnapshot();
+
+            for (int i = 0; i < ISSUES_OPTIONS.length; i++) {
+                assertEquals(firstTable.getWeight(i), secondTable.getWeight(i), 1e-5);
+
+                for (int j = 0; j < ISSUES_OPTIONS[i]; j++) {
+                    assertEquals(firstTable.getUtility(i, j), secondTable.getUtility(i, j), 1e-5);
+                }
+            }
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    void predictionsDoNotDependOnEarlierFeeds() {
+        TrainingParameters parameters = TrainingParameters.DEFAULT.withMode(TrainingParameters.TrainingMode.MINI_BATCH)
+                .withBatchSize(4);
+        TFUtilityModel model = new TFUtilityModel(ISSUES_OPTIONS, parameters);
+
+        try {
+            model.train(randomExamples(new Random(0), ISSUES_OPTIONS, 10));
+
+            int[] bid = {1, 2, 3};
+            float prediction = model.predict(bid);
+
+            model.predict(new int[]{0, 0, 0});
+            model.predict(new int[]{1, 1, 1});
+
+            assertEquals(prediction, model.predict(bid));
+        } finally {
+            model.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ai2020.group17;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static ai2020.group17.TFGatherUtilityModelTest.randomExamples;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JavaUtilityModelTest {
+
+    private static final int[] ISSUES_OPTIONS = {3, 4, 2, 5};
+
+    private static void assertSameModel(UtilityModel expected, UtilityModel actual, List<TFUtilityModel.TrainingExample> examples) {
+        assertArrayEquals(expected.computeWeights(), actual.computeWeights(), 1e-4);
+
+        for (int i = 0; i < ISSUES_OPTIONS.length; i++) {
+            assertArrayEquals(expected.computeIssueWeights(i), actual.computeIssueWeights(i), 1e-4);
+        }
+
+        for (TFUtilityModel.TrainingExample example : examples) {
+            assertEquals(expected.predict(example.options), actual.predict(example.options), 1e-4);
+        }
+    }
+
+    @Test
+    void matchesTensorflowPerExample() {
+        TrainingParameters parameters = TrainingParameters.DEFAULT.withMode(TrainingParameters.TrainingMode.PER_EXAMPLE);
+        List<TFUtilityModel.TrainingExample> examples = randomExamples(new Random(1), ISSUES_OPTIONS, 50);
+
+        UtilityModel tfModel = new TFUtilityModel(ISSUES_OPTIONS, parameters);
+        UtilityModel javaModel = new JavaUtilityModel(ISSUES_OPTIONS, parameters);
+
+        tfModel.train(examples);
+        javaModel.train(examples);
+
+        assertSameModel(tfModel, javaModel, examples);
+    }
+
+    @Test
+    void matchesTensorflowMiniBatch() {
+        TrainingParameters parameters = TrainingParameters.DEFAULT.withMode(TrainingParameters.TrainingMode.MINI_BATCH)
+                .withBatchSize(8);
+        Random random = new Random(2);
+
+        UtilityModel tfModel = new TFUtilityModel(ISSUES_OPTIONS, parameters);
+        UtilityModel javaModel = new JavaUtilityModel(ISSUES_OPTIONS, parameters);
+
+        // Train several times, like the opponent model does
+        for (int i = 0; i < 5; i++) {
+            List<TFUtilityModel.TrainingExample> examples = randomExamples(random, ISSUES_OPTIONS, 20);
+
+            tfModel.train(examples);
+            javaModel.train(examples);
+        }
+
+        assertSameModel(tfModel, javaModel, randomExamples(random, ISSUES_OPTIONS, 100));
+    }
+}
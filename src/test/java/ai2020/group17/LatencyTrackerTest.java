@@ -0,0 +1,37 @@
+package ai2020.group17;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyTrackerTest {
+
+    @Test
+    void averageStartsAtFirstLatencyAndFollowsRecentLatencies() {
+        LatencyTracker tracker = new LatencyTracker();
+        assertEquals(0, tracker.getAverageMs());
+
+        tracker.record(10);
+        assertEquals(10, tracker.getAverageMs(), 1e-9);
+
+        tracker.record(20);
+        assertEquals(10 + LatencyTracker.ALPHA * 10, tracker.getAverageMs(), 1e-9);
+
+        for (int i = 0; i < 100; i++) {
+            tracker.record(50);
+        }
+        assertEquals(50, tracker.getAverageMs(), 1e-6);
+    }
+
+    @Test
+    void recordSinceMeasuresElapsedTime() throws InterruptedException {
+        LatencyTracker tracker = new LatencyTracker();
+
+        long start = System.nanoTime();
+        Thread.sleep(5);
+        tracker.recordSince(start);
+
+        assertTrue(tracker.getAverageMs() >= 5);
+    }
+}
@@ -0,0 +1,81 @@
+package ai2020.group17;
+
+import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.DiscreteValue;
+import geniusweb.issuevalue.Value;
+import org.bytedeco.javacpp.Pointer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static ai2020.group17.PrimitiveBidGeneratorTest.domain;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeMemoryLeakTest {
+
+    private static final PartyId OTHER = new PartyId("other");
+
+    private final Bid bid1 = new Bid(Map.<String, Value>of("Menu", new DiscreteValue("Fish"), "Cost", new DiscreteValue("2000 EUR"),
+            "Music", new DiscreteValue("Band")));
+    private final Bid bid2 = new Bid(Map.<String, Value>of("Menu", new DiscreteValue("Meat"), "Cost", new DiscreteValue("9000 EUR"),
+            "Music", new DiscreteValue("None")));
+
+    // Simulate a session with a single opponent: create the model, train on some actions, read it and close it.
+    private void simulateSession() {
+        TFLinearAdditiveOpponentModel model = new TFLinearAdditiveOpponentModel(domain);
+
+        for (int i = 0; i < 5; i++) {
+            model = model.with(new Offer(OTHER, i % 2 == 0 ? bid1 : bid2), null);
+            model.getUtility(bid1);
+        }
+
+        model.close();
+    }
+
+    // Free the native memory of the pointers that are no longer referenced, like javacpp does itself when it
+    // runs out of memory, so only the memory that is kept is measured
+    private static void freeUnreferenced() throws InterruptedException {
+        long bytes;
+        int tries = 0;
+
+        do {
+            bytes = Pointer.totalBytes();
+
+            System.gc();
+            Thread.sleep(100);
+            Pointer.deallocateReferences();
+        } while (Pointer.totalBytes() < bytes && ++tries < 10);
+    }
+
+    @Test
+    void nativeMemoryStaysBounded() throws InterruptedException {
+        // Warm up, so that lazily allocated native memory of tensorflow itself is not counted
+        for (int i = 0; i < 50; i++) {
+            simulateSession();
+        }
+
+        freeUnreferenced();
+        long trackedBefore = Pointer.totalBytes();
+        long physicalBefore = Pointer.physicalBytes();
+
+        for (int i = 0; i < 500; i++) {
+            simulateSession();
+        }
+
+        freeUnreferenced();
+        long trackedGrowth = Pointer.totalBytes() - trackedBefore;
+        long physicalGrowth = Pointer.physicalBytes() - physicalBefore;
+
+        System.out.println("Growth over 500 sessions: " + trackedGrowth / 1024 + " KiB of tensors, "
+                + physicalGrowth / 1024 + " KiB resident");
+
+        // The tensors are tracked exactly by javacpp, so any tensor that is kept open shows
+        assertTrue(trackedGrowth < 1024L * 1024);
+
+        // The graphs and sessions aren't tracked, a session that is kept open grows the resident size by megabytes.
+        // The resident size also grows when heap pages are first used, so the bound is coarse.
+        assertTrue(physicalGrowth < 64L * 1024 * 1024);
+    }
+}
@@ -0,0 +1,23 @@
+package ai2020.group17;
+
+import org.junit.jupiter.api.Test;
+
+import static ai2020.group17.PrimitiveBidGeneratorTest.domain;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OpeningBidsTest {
+
+    private final UtilityOfferStringToIntOptionsMapper mapper = UtilityOfferStringToIntOptionsMapper.forDomain(domain);
+
+    @Test
+    void bestBidIsOfferedAfterTheOpeningBids() {
+        int[] first = {0, 1, 0};
+        int[] best = {1, 0, 1};
+        OpeningBids openingBids = new OpeningBids(mapper, new int[][]{first}, best);
+
+        assertEquals(1, openingBids.size());
+        assertEquals(mapper.convertToBid(first), openingBids.getBid(0));
+        assertEquals(mapper.convertToBid(best), openingBids.getBid(1));
+        assertEquals(mapper.convertToBid(best), openingBids.getBid(5));
+    }
+}
@@ -0,0 +1,258 @@
+package ai2020.group17;
+
+import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.DiscreteValue;
+import geniusweb.issuevalue.Value;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import org.junit.jupiter.api.Test;
+import tudelft.utilities.logging.Reporter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ai2020.group17.PrimitiveBidGeneratorTest.domain;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class OpponentModelTrainerTest {
+
+    private static final PartyId OTHER = new PartyId("other");
+    private static final PartyId OTHER2 = new PartyId("other2");
+
+    private final Bid bid = new Bid(Map.<String, Value>of("Menu", new DiscreteValue("Fish"), "Cost", new DiscreteValue("2000 EUR"),
+            "Music", new DiscreteValue("Band")));
+
+    private final TrainingParameters parameters = TrainingParameters.DEFAULT.withBackend(TrainingParameters.Backend.JAVA);
+
+    private OpponentModelTrainer createTrainer(boolean async) {
+        return new OpponentModelTrainer(actor -> new TFLinearAdditiveOpponentModel(domain, parameters), async, mock(Reporter.class));
+    }
+
+    private static Bid randomBid(Random random) {
+        return new Bid(Map.<String, Value>of(
+                "Menu", new DiscreteValue(random.nextBoolean() ? "Fish" : "Meat"),
+                "Cost", new DiscreteValue(new String[]{"2000 EUR", "5000 EUR", "9000 EUR"}[random.nextInt(3)]),
+                "Music", new DiscreteValue(new String[]{"Band", "DJ", "None"}[random.nextInt(3)])));
+    }
+
+    /**
+     * Train the models of all parties on the same sequence of offers.
+     * @return The snapshots of the trained models, in the order of the parties.
+     */
+    private List<UtilityTable> trainParallel(List<PartyId> parties, List<Bid> bids, int threads) {
+        // A small reservoir makes the training depend on the seeded randomness of the replay buffers
+        TrainingParameters reservoir = parameters.withReplayBuffer(8, ReplayBuffer.SamplingPolicy.RESERVOIR);
+
+        try (OpponentModelTrainer trainer = new OpponentModelTrainer(
+                actor -> new TFLinearAdditiveOpponentModel(domain, reservoir, new Random(actor.getName().hashCode())),
+                true, threads, mock(Reporter.class))) {
+            long start = System.nanoTime();
+
+            for (Bid bid : bids) {
+                for (PartyId party : parties) {
+                    trainer.submit(new Offer(party, bid), null);
+                }
+            }
+
+            assertTrue(trainer.awaitIdle(60000));
+
+            System.out.println(parties.size() + " parties, " + threads + " threads: "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+
+            Map<PartyId, LinearAdditive> models = trainer.getModels(0);
+            List<UtilityTable> snapshots = new ArrayList<>();
+
+            for (PartyId party : parties) {
+                snapshots.add(((TFLinearAdditiveOpponentModel) models.get(party)).getSnapshot());
+            }
+
+            return snapshots;
+        }
+    }
+
+    /**
+     * Benchmark of the scaling with the number of parties and threads, that also checks that the trained models
+     * are the same for any number of threads.
+     */
+    @Test
+    void parallelTrainingIsIndependentOfThreadCount() {
+        Random random = new Random(8);
+        List<Bid> bids = new ArrayList<>();
+
+        for (int i = 0; i < 60; i++) {
+            bids.add(randomBid(random));
+        }
+
+        for (int nParties : new int[]{1, 4, 8}) {
+            List<PartyId> parties = new ArrayList<>();
+
+            for (int i = 0; i < nParties; i++) {
+                parties.add(new PartyId("party" + i));
+            }
+
+            List<UtilityTable> sequential = trainParallel(parties, bids, 1);
+            List<UtilityTable> parallel = trainParallel(parties, bids, 4);
+
+            for (int i = 0; i < nParties; i++) {
+                assertArrayEquals(sequential.get(i).weights, parallel.get(i).weights);
+                for (int j = 0; j < sequential.get(i).getIssueCount(); j++) {
+                    assertArrayEquals(sequential.get(i).utilities[j], parallel.get(i).utilities[j]);
+                }
+            }
+        }
+    }
+
+    @Test
+    void inlineTrainingIsImmediatelyVisible() {
+        try (OpponentModelTrainer trainer = createTrainer(false)) {
+            trainer.submit(new Offer(OTHER, bid), null);
+
+            Map<PartyId, LinearAdditive> models = trainer.getModels(0);
+
+            assertEquals(1, ((TFLinearAdditiveOpponentModel) models.get(OTHER)).getVersion());
+        }
+    }
+
+    @Test
+    void asyncTrainingPublishesAllUpdates() {
+        try (OpponentModelTrainer trainer = createTrainer(true)) {
+            for (int i = 0; i < 20; i++) {
+                trainer.submit(new Offer(i % 2 == 0 ? OTHER : OTHER2, bid), null);
+            }
+
+            // Reading stale models never blocks
+            trainer.getModels(0);
+
+            assertTrue(trainer.awaitIdle(10000));
+
+            Map<PartyId, LinearAdditive> models = trainer.getModels(0);
+
+            assertEquals(10, ((TFLinearAdditiveOpponentModel) models.get(OTHER)).getVersion());
+            assertEquals(10, ((TFLinearAdditiveOpponentModel) models.get(OTHER2)).getVersion());
+        }
+    }
+
+    @Test
+    void anErrorInATrainingStepDoesNotBlockTheLaterSteps() {
+        AtomicInteger created = new AtomicInteger();
+
+        try (OpponentModelTrainer trainer = new OpponentModelTrainer(actor -> {
+            if (created.getAndIncrement() == 0) {
+                throw new AssertionError("first model fails");
+            }
+
+            return new TFLinearAdditiveOpponentModel(domain, parameters);
+        }, true, mock(Reporter.class))) {
+            for (int i = 0; i < 3; i++) {
+                trainer.submit(new Offer(OTHER, bid), null);
+            }
+
+            assertTrue(trainer.awaitIdle(10000));
+            assertEquals(2, ((TFLinearAdditiveOpponentModel) trainer.getModels(0).get(OTHER)).getVersion());
+        }
+    }
+
+    @Test
+    void closeDropsQueuedActionsAndIgnoresLaterActions() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        OpponentModelTrainer trainer = new OpponentModelTrainer(actor -> {
+            started.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return new TFLinearAdditiveOpponentModel(domain, parameters);
+        }, true, mock(Reporter.class));
+
+        for (int i = 0; i < 5; i++) {
+            trainer.submit(new Offer(OTHER, bid), null);
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // The running step is interrupted, the queued steps are dropped
+        trainer.close();
+        release.countDown();
+
+        assertTrue(trainer.awaitIdle(0));
+
+        trainer.submit(new Offer(OTHER2, bid), null);
+        assertTrue(trainer.getModels(100).isEmpty());
+    }
+
+    /**
+     * Train the models of the parties on offers where party i skips every (i + 2)-th round.
+     * @return The snapshots of the trained models, in the order of the parties.
+     */
+    private List<UtilityTable> trainOnRounds(List<PartyId> parties, List<Bid> bids, boolean async, boolean batched) {
+        TrainingParameters tensorflow = TrainingParameters.DEFAULT.withMode(TrainingParameters.TrainingMode.MINI_BATCH)
+                .withBatchSize(4);
+        UtilityOfferStringToIntOptionsMapper mapper = UtilityOfferStringToIntOptionsMapper.forDomain(domain);
+        TFMultiOpponentUtilityModel shared = new TFMultiOpponentUtilityModel(mapper.issuesOptions, 2, tensorflow);
+
+        try (OpponentModelTrainer trainer = new OpponentModelTrainer(actor -> {
+            Random random = new Random(actor.getName().hashCode());
+
+            return batched ? new TFLinearAdditiveOpponentModel(domain, mapper, shared.addOpponent(), tensorflow, random)
+                    : new TFLinearAdditiveOpponentModel(domain, tensorflow, random);
+        }, async, 1, batched, mock(Reporter.class))) {
+            for (int round = 0; round < bids.size(); round++) {
+                for (int i = 0; i < parties.size(); i++) {
+                    if (round % (i + 2) != 1) {
+                        trainer.submit(new Offer(parties.get(i), bids.get(round)), null);
+                    }
+                }
+            }
+
+            assertTrue(trainer.awaitIdle(60000));
+
+            Map<PartyId, LinearAdditive> models = trainer.getModels(0);
+            List<UtilityTable> snapshots = new ArrayList<>();
+
+            for (PartyId party : parties) {
+                snapshots.add(((TFLinearAdditiveOpponentModel) models.get(party)).getSnapshot());
+            }
+
+            return snapshots;
+        } finally {
+            shared.close();
+        }
+    }
+
+    @Test
+    void batchedTrainingMatchesSeparateTraining() {
+        Random random = new Random(4);
+        List<Bid> bids = new ArrayList<>();
+
+        for (int i = 0; i < 12; i++) {
+            bids.add(randomBid(random));
+        }
+
+        List<PartyId> parties = List.of(OTHER, OTHER2, new PartyId("other3"));
+        List<UtilityTable> separate = trainOnRounds(parties, bids, false, false);
+
+        for (boolean async : new boolean[]{false, true}) {
+            List<UtilityTable> batched = trainOnRounds(parties, bids, async, true);
+
+            for (int i = 0; i < parties.size(); i++) {
+                assertArrayEquals(separate.get(i).weights, batched.get(i).weights, 1e-5);
+                for (int j = 0; j < separate.get(i).getIssueCount(); j++) {
+                    assertArrayEquals(separate.get(i).utilities[j], batched.get(i).utilities[j], 1e-5);
+                }
+            }
+        }
+    }
+}
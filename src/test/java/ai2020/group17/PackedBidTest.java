@@ -0,0 +1,58 @@
+package ai2020.group17;
+
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.DiscreteValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static ai2020.group17.PrimitiveBidGeneratorTest.domain;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PackedBidTest {
+
+    @Test
+    void bidsRoundTripAcrossWords() {
+        // 3 issues of 20 bits (1000000 options) fit in a long, small issues fill the remaining bits
+        int[] issuesOptions = {1000000, 2, 1000000, 1000000, 3, 1000000, 1000000, 1, 1000000, 1000000, 1000000};
+        PackedBid.Layout layout = new PackedBid.Layout(issuesOptions);
+        assertEquals(3, layout.getWordCount());
+
+        Random random = new Random(0);
+        for (int n = 0; n < 1000; n++) {
+            int[] options = new int[issuesOptions.length];
+            for (int i = 0; i < options.length; i++) {
+                options[i] = random.nextInt(issuesOptions[i]);
+            }
+
+            PackedBid bid = layout.pack(options);
+
+            assertArrayEquals(options, layout.unpack(bid, new int[options.length]));
+            assertEquals(bid, layout.pack(options.clone()));
+            assertEquals(bid.hashCode(), layout.pack(options.clone()).hashCode());
+        }
+    }
+
+    @Test
+    void differentBidsAreNotEqual() {
+        PackedBid.Layout layout = new PackedBid.Layout(new int[]{2, 3, 3});
+
+        assertNotEquals(layout.pack(new int[]{0, 1, 2}), layout.pack(new int[]{0, 2, 1}));
+        assertNotEquals(layout.pack(new int[]{1, 0, 0}), layout.pack(new int[]{0, 0, 0}));
+    }
+
+    @Test
+    void mapperPacksGeniuswebBidsLikeIntBids() {
+        UtilityOfferStringToIntOptionsMapper mapper = UtilityOfferStringToIntOptionsMapper.forDomain(domain);
+        int[] options = {1, 1, 0};
+        Bid bid = mapper.convertToBid(options);
+
+        assertEquals(mapper.getPacking().pack(options), mapper.pack(bid.getIssueValues()));
+
+        // Incomplete bids have no packed form
+        assertNull(mapper.pack(new Bid("Menu", new DiscreteValue("Fish")).getIssueValues()));
+    }
+}
@@ -0,0 +1,172 @@
+package ai2020.group17;
+
+import geniusweb.actions.PartyId;
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.DiscreteValue;
+import geniusweb.issuevalue.DiscreteValueSet;
+import geniusweb.issuevalue.Domain;
+import geniusweb.issuevalue.ValueSet;
+import geniusweb.profile.utilityspace.DiscreteValueSetUtilities;
+import geniusweb.profile.utilityspace.LinearAdditive;
+import geniusweb.profile.utilityspace.LinearAdditiveUtilitySpace;
+import geniusweb.profile.utilityspace.ValueSetUtilities;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrimitiveBidGeneratorTest {
+
+    private static final PartyId OTHER = new PartyId("other");
+
+    static final Domain domain = new Domain("party", Map.<String, ValueSet>of(
+            "Menu", new DiscreteValueSet(new DiscreteValue("Fish"), new DiscreteValue("Meat")),
+            "Cost", new DiscreteValueSet(new DiscreteValue("2000 EUR"), new DiscreteValue("5000 EUR"), new DiscreteValue("9000 EUR")),
+            "Music", new DiscreteValueSet(new DiscreteValue("Band"), new DiscreteValue("DJ"), new DiscreteValue("None"))));
+
+    static final LinearAdditive myProfile = space(
+            Map.of("Menu", 0.2, "Cost", 0.5, "Music", 0.3),
+            Map.of("Fish", 1.0, "Meat", 0.3,
+                    "2000 EUR", 1.0, "5000 EUR", 0.6, "9000 EUR", 0.0,
+                    "Band", 0.8, "DJ", 1.0, "None", 0.1));
+
+    static final LinearAdditive opponent = space(
+            Map.of("Menu", 0.4, "Cost", 0.1, "Music", 0.5),
+            Map.of("Fish", 0.2, "Meat", 1.0,
+                    "2000 EUR", 0.3, "5000 EUR", 0.7, "9000 EUR", 1.0,
+                    "Band", 1.0, "DJ", 0.4, "None", 0.5));
+
+    static LinearAdditive space(Map<String, Double> weights, Map<String, Double> utilities) {
+        Map<String, ValueSetUtilities> issueUtilities = new HashMap<>();
+        Map<String, BigDecimal> issueWeights = new HashMap<>();
+
+        for (String issue : domain.getIssues()) {
+            Map<DiscreteValue, BigDecimal> valueUtilities = new HashMap<>();
+            for (geniusweb.issuevalue.Value value : domain.getValues(issue)) {
+                valueUtilities.put((DiscreteValue) value, BigDecimal.valueOf(utilities.get(((DiscreteValue) value).getValue())));
+            }
+
+            issueUtilities.put(issue, new DiscreteValueSetUtilities(valueUtilities));
+            issueWeights.put(issue, BigDecimal.valueOf(weights.get(issue)));
+        }
+
+        return new LinearAdditiveUtilitySpace(domain, "profile", issueUtilities, issueWeights, null);
+    }
+
+    @Test
+    void drawPlanDrawsLowestWeightFirstAndBoundsTheRemainingUtility() {
+        UtilityOfferStringToIntOptionsMapper mapper = UtilityOfferStringToIntOptionsMapper.forDomain(domain);
+        BidGeneration.DrawPlan plan = BidGeneration.DrawPlan.of(myProfile, mapper);
+
+        String[] issues = new String[plan.drawOrder.length];
+        for (int k = 0; k < issues.length; k++) {
+            issues[k] = mapper.mapIndexToIssue(plan.drawOrder[k]);
+        }
+        assertArrayEquals(new String[]{"Menu", "Music", "Cost"}, issues);
+
+        // Brute force the maximum utility of the remaining issues over all bids
+        int nBids = 1;
+        for (int options : mapper.issuesOptions) {
+            nBids *= options;
+        }
+
+        for (int k = 0; k <= issues.length; k++) {
+            double max = 0;
+
+            for (int b = 0; b < nBids; b++) {
+                int[] bid = new int[issues.length];
+                for (int i = 0, rest = b; i < bid.length; rest /= mapper.issuesOptions[i], i++) {
+                    bid[i] = rest % mapper.issuesOptions[i];
+                }
+
+                double remaining = 0;
+                for (int r = k; r < issues.length; r++) {
+                    int issue = plan.drawOrder[r];
+                    remaining += myProfile.getUtility(new Bid(issues[r], mapper.mapOptionIndexToValue(issue, bid[issue])))
+                            .doubleValue();
+                }
+
+                max = Math.max(max, remaining);
+            }
+
+            assertEquals(max, plan.maxRemainingUtility[k], 1e-9);
+        }
+    }
+
+    @Test
+    void generatedBidsReachThreshold() {
+        UtilityOfferStringToIntOptionsMapper mapper = UtilityOfferStringToIntOptionsMapper.forDomain(domain);
+        PrimitiveBidGenerator generator = new PrimitiveBidGenerator(myProfile, mapper, new Sampler(1));
+
+        PrimitiveBidGenerator.Targets targets = generator.prepare(new UtilityTable[]{UtilityTable.of(opponent, mapper)});
+        int[] bid = new int[3];
+
+        for (int i = 0; i < 1000; i++) {
+            generator.generateBid(targets, 0.7, bid);
+
+            Bid converted = mapper.convertToBid(bid);
+            assertTrue(myProfile.getUtility(converted).doubleValue() >= 0.7 - 1e-9);
+            assertEquals(generator.getMyTable().getUtility(bid), myProfile.getUtility(converted).doubleValue(), 1e-9);
+        }
+    }
+
+    @Test
+    void sameDistributionAsObjectBidGeneration() {
+        UtilityOfferStringToIntOptionsMapper mapper = UtilityOfferStringToIntOptionsMapper.forDomain(domain);
+        PrimitiveBidGenerator generator = new PrimitiveBidGenerator(myProfile, mapper, new Sampler(2));
+
+        Map<PartyId, Integer> powers = Map.of(OTHER, 1);
+        Map<PartyId, LinearAdditive> opponents = Map.of(OTHER, opponent);
+
+        BidGeneration objectGeneration = new BidGeneration(myProfile, powers, 1);
+        BidGeneration primitiveGeneration = new BidGeneration(myProfile, powers, 1, BidGeneration.DrawPlan.of(myProfile, mapper),
+                new CoalitionTracker(myProfile, mapper), new Sampler(4), generator);
+
+        int n = 5000;
+        Map<Bid, Integer> objectCounts = new HashMap<>();
+        Map<Bid, Integer> primitiveCounts = new HashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            objectCounts.merge(objectGeneration.generateBid(opponents, 0.6), 1, Integer::sum);
+            primitiveCounts.merge(primitiveGeneration.generateBid(opponents, 0.6), 1, Integer::sum);
+        }
+
+        assertEquals(objectCounts.keySet(), primitiveCounts.keySet());
+
+        for (Bid bid : objectCounts.keySet()) {
+            assertEquals(objectCounts.get(bid) / (double) n, primitiveCounts.get(bid) / (double) n, 0.03);
+        }
+    }
+
+    @Test
+    void generateBidDoesNotAllocate() {
+        UtilityOfferStringToIntOptionsMapper mapper = UtilityOfferStringToIntOptionsMapper.forDomain(domain);
+        PrimitiveBidGenerator generator = new PrimitiveBidGenerator(myProfile, mapper, new Sampler(3));
+
+        PrimitiveBidGenerator.Targets targets = generator.prepare(new UtilityTable[]{UtilityTable.of(opponent, mapper), UtilityTable.of(myProfile, mapper)});
+        int[] bid = new int[3];
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        // Warm up, so the measurement is not disturbed by class loading and compilation
+        for (int i = 0; i < 100000; i++) {
+            generator.generateBid(targets, 0.5, bid);
+        }
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100000; i++) {
+            generator.generateBid(targets, 0.5, bid);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - start;
+
+        // Allow for the allocation of the measurement itself
+        assertTrue(allocated < 10000, "Allocated " + allocated + " bytes");
+    }
+}
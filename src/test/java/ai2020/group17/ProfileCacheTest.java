@@ -0,0 +1,81 @@
+package ai2020.group17;
+
+import geniusweb.profile.utilityspace.LinearAdditiveUtilitySpace;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static ai2020.group17.PrimitiveBidGeneratorTest.myProfile;
+import static ai2020.group17.PrimitiveBidGeneratorTest.opponent;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProfileCacheTest {
+
+    private final LinearAdditiveUtilitySpace space = (LinearAdditiveUtilitySpace) myProfile;
+    private final LinearAdditiveUtilitySpace other = (LinearAdditiveUtilitySpace) opponent;
+
+    @Test
+    void entryIsSharedForTheSameUriAndProfile() {
+        URI uri = URI.create("file:shared/party1.json");
+
+        ProfileCache.Entry entry = ProfileCache.get(uri, space);
+
+        assertSame(entry, ProfileCache.get(uri, space));
+        assertSame(space, entry.getSpace());
+        assertNotSame(entry, ProfileCache.get(URI.create("file:shared/party2.json"), space));
+        assertNotSame(entry, ProfileCache.get(uri, other));
+    }
+
+    @Test
+    void primitiveGeneratorsShareTheirTables() {
+        ProfileCache.Entry entry = ProfileCache.get(URI.create("file:generator/party1.json"), space);
+
+        PrimitiveBidGenerator first = entry.getPrimitiveBidGenerator(new Sampler(1));
+        PrimitiveBidGenerator second = entry.getPrimitiveBidGenerator(new Sampler(2));
+
+        assertNotSame(first, second);
+        assertSame(first.getMyTable(), second.getMyTable());
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted() {
+        URI first = URI.create("file:evict/party0.json");
+        ProfileCache.Entry entry = ProfileCache.get(first, space);
+
+        for (int i = 1; i <= ProfileCache.MAX_ENTRIES; i++) {
+            ProfileCache.get(URI.create("file:evict/party" + i + ".json"), space);
+        }
+
+        assertTrue(ProfileCache.size() <= ProfileCache.MAX_ENTRIES);
+        assertNotSame(entry, ProfileCache.get(first, space));
+        assertEquals(ProfileCache.MAX_ENTRIES, ProfileCache.size());
+    }
+
+    @Test
+    void failedOpeningBidsAreComputedAgain() throws InterruptedException {
+        ProfileCache.Entry entry = ProfileCache.get(URI.create("file:opening/party1.json"), space);
+
+        CompletableFuture<OpeningBids> failed = entry.getOpeningBids(3, () -> {
+            throw new IllegalStateException("failed");
+        });
+        assertThrows(CompletionException.class, failed::join);
+
+        OpeningBids computed = new OpeningBids(entry.getMapper(), new int[][]{{0, 1, 0}}, new int[]{1, 0, 1});
+
+        // The failed future is removed when it completes
+        CompletableFuture<OpeningBids> bids = entry.getOpeningBids(3, () -> computed);
+        for (int i = 0; bids == failed && i < 100; i++) {
+            Thread.sleep(10);
+            bids = entry.getOpeningBids(3, () -> computed);
+        }
+
+        assertSame(computed, bids.join());
+        assertSame(bids, entry.getOpeningBids(3));
+    }
+}
@@ -0,0 +1,85 @@
+package ai2020.group17;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayBufferTest {
+
+    private static List<TFUtilityModel.TrainingExample> examples(int from, int to) {
+        List<TFUtilityModel.TrainingExample> list = new ArrayList<>();
+
+        for (int i = from; i < to; i++) {
+            list.add(new TFUtilityModel.TrainingExample(new int[]{i}, true));
+        }
+
+        return list;
+    }
+
+    @Test
+    void unboundedReplaysFullHistory() {
+        ReplayBuffer buffer = new ReplayBuffer(ReplayBuffer.UNBOUNDED, ReplayBuffer.SamplingPolicy.RECENT, new Random(0));
+
+        buffer.addAll(examples(0, 10));
+
+        List<TFUtilityModel.TrainingExample> trainingSet = buffer.trainingSet(examples(10, 12));
+
+        assertEquals(examples(0, 12), trainingSet);
+    }
+
+    @Test
+    void onlineTrainsOnNewExamplesOnly() {
+        ReplayBuffer buffer = new ReplayBuffer(0, ReplayBuffer.SamplingPolicy.RECENT, new Random(0));
+
+        buffer.addAll(examples(0, 10));
+
+        assertEquals(0, buffer.size());
+        assertEquals(examples(10, 12), buffer.trainingSet(examples(10, 12)));
+    }
+
+    @Test
+    void recentKeepsLastExamplesInOrder() {
+        ReplayBuffer buffer = new ReplayBuffer(5, ReplayBuffer.SamplingPolicy.RECENT, new Random(0));
+
+        buffer.addAll(examples(0, 13));
+
+        assertEquals(examples(8, 15), buffer.trainingSet(examples(13, 15)));
+    }
+
+    @Test
+    void reservoirStaysBounded() {
+        ReplayBuffer buffer = new ReplayBuffer(5, ReplayBuffer.SamplingPolicy.RESERVOIR, new Random(0));
+
+        buffer.addAll(examples(0, 1000));
+
+        assertEquals(5, buffer.size());
+
+        List<TFUtilityModel.TrainingExample> trainingSet = buffer.trainingSet(examples(1000, 1001));
+        assertEquals(6, trainingSet.size());
+        assertTrue(trainingSet.containsAll(examples(1000, 1001)));
+    }
+
+    @Test
+    void keptExamplesOfTheSameBidShareTheirBid() {
+        ReplayBuffer buffer = new ReplayBuffer(ReplayBuffer.UNBOUNDED, ReplayBuffer.SamplingPolicy.RECENT, new Random(0),
+                new PackedBid.Layout(new int[]{2, 3}));
+
+        buffer.add(new TFUtilityModel.TrainingExample(new int[]{1, 2}, true));
+        buffer.add(new TFUtilityModel.TrainingExample(new int[]{1, 2}, false));
+        buffer.add(new TFUtilityModel.TrainingExample(new int[]{0, 2}, true));
+
+        List<TFUtilityModel.TrainingExample> trainingSet = buffer.trainingSet(new ArrayList<>());
+
+        assertEquals(3, trainingSet.size());
+        assertSame(trainingSet.get(0).options, trainingSet.get(1).options);
+        assertEquals(false, trainingSet.get(1).accepted);
+        assertArrayEquals(new int[]{0, 2}, trainingSet.get(2).options);
+    }
+}
@@ -0,0 +1,67 @@
+package ai2020.group17;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SamplerTest {
+
+    private static final double[] DISTRIBUTION = {0.5, 0.0, 2.0, 1.0, 0.25};
+
+    private static double[] frequencies(IntSupplier draw, int n) {
+        double[] frequencies = new double[DISTRIBUTION.length];
+
+        for (int i = 0; i < n; i++) {
+            frequencies[draw.getAsInt()] += 1.0 / n;
+        }
+
+        return frequencies;
+    }
+
+    private static void assertFrequencies(double[] frequencies) {
+        double total = 0;
+        for (double p : DISTRIBUTION) {
+            total += p;
+        }
+
+        for (int i = 0; i < DISTRIBUTION.length; i++) {
+            assertEquals(DISTRIBUTION[i] / total, frequencies[i], 0.01);
+        }
+    }
+
+    @Test
+    void linearScanAndAliasTableMatchDistribution() {
+        Sampler sampler = new Sampler(1);
+        Sampler.AliasTable aliasTable = new Sampler.AliasTable(DISTRIBUTION, DISTRIBUTION.length);
+
+        assertFrequencies(frequencies(() -> sampler.draw(DISTRIBUTION, DISTRIBUTION.length), 100000));
+        assertFrequencies(frequencies(() -> aliasTable.draw(sampler), 100000));
+    }
+
+    @Test
+    void zeroDistributionDrawsFirstIndex() {
+        Sampler sampler = new Sampler(2);
+        double[] zeros = new double[3];
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, sampler.draw(zeros, zeros.length));
+            assertEquals(0, new Sampler.AliasTable(zeros, zeros.length).draw(sampler));
+        }
+    }
+
+    @Test
+    void seededSamplersAreReproducible() {
+        Sampler sampler1 = new Sampler(3);
+        Sampler sampler2 = new Sampler(3);
+
+        Sampler split1 = sampler1.split();
+        Sampler split2 = sampler2.split();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(sampler1.draw(DISTRIBUTION, DISTRIBUTION.length), sampler2.draw(DISTRIBUTION, DISTRIBUTION.length));
+            assertEquals(split1.nextLong(), split2.nextLong());
+        }
+    }
+}
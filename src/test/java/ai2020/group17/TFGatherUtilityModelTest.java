@@ -0,0 +1,122 @@
+package ai2020.group17;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TFGatherUtilityModelTest {
+
+    private static final int[] ISSUES_OPTIONS = {3, 4, 2, 5};
+
+    /**
+     * Random training examples, shared by the tests of the other utility models.
+     */
+    static List<TFUtilityModel.TrainingExample> randomExamples(Random random, int[] issuesOptions, int n) {
+        List<TFUtilityModel.TrainingExample> examples = new ArrayList<>();
+
+        for (int i = 0; i < n; i++) {
+            int[] options = new int[issuesOptions.length];
+
+            for (int j = 0; j < options.length; j++) {
+                options[j] = random.nextInt(issuesOptions[j]);
+            }
+
+            examples.add(new TFUtilityModel.TrainingExample(options, random.nextBoolean()));
+        }
+
+        return examples;
+    }
+
+    private static void assertSameModel(UtilityModel expected, UtilityModel actual, List<TFUtilityModel.TrainingExample> examples) {
+        assertArrayEquals(expected.computeWeights(), actual.computeWeights(), 1e-4);
+
+        UtilityTable snapshot = actual.computeSnapshot();
+        for (int i = 0; i < ISSUES_OPTIONS.length; i++) {
+            assertArrayEquals(expected.computeIssueWeights(i), actual.computeIssueWeights(i), 1e-4);
+
+            for (int j = 0; j < ISSUES_OPTIONS[i]; j++) {
+                assertEquals(actual.computeIssueWeights(i)[j], snapshot.getUtility(i, j), 1e-6);
+            }
+        }
+
+        for (TFUtilityModel.TrainingExample example : examples) {
+            assertEquals(expected.predict(example.options), actual.predict(example.options), 1e-4);
+        }
+    }
+
+    @Test
+    void matchesOneHotModelPerExample() {
+        TrainingParameters parameters = TrainingParameters.DEFAULT.withMode(TrainingParameters.TrainingMode.PER_EXAMPLE);
+        List<TFUtilityModel.TrainingExample> examples = randomExamples(new Random(1), ISSUES_OPTIONS, 50);
+
+        try (UtilityModel oneHotModel = new TFUtilityModel(ISSUES_OPTIONS, parameters);
+             UtilityModel gatherModel = new TFGatherUtilityModel(ISSUES_OPTIONS, parameters)) {
+            oneHotModel.train(examples);
+            gatherModel.train(examples);
+
+            assertSameModel(oneHotModel, gatherModel, examples);
+        }
+    }
+
+    @Test
+    void matchesOneHotModelMiniBatch() {
+        TrainingParameters parameters = TrainingParameters.DEFAULT.withMode(TrainingParameters.TrainingMode.MINI_BATCH)
+                .withBatchSize(8);
+        Random random = new Random(2);
+
+        try (UtilityModel oneHotModel = new TFUtilityModel(ISSUES_OPTIONS, parameters);
+             UtilityModel gatherModel = parameters.withBackend(TrainingParameters.Backend.TENSORFLOW_GATHER)
+                     .createUtilityModel(ISSUES_OPTIONS)) {
+            // Train several times, like the opponent model does
+            for (int i = 0; i < 5; i++) {
+                List<TFUtilityModel.TrainingExample> examples = randomExamples(random, ISSUES_OPTIONS, 20);
+
+                oneHotModel.train(examples);
+                gatherModel.train(examples);
+            }
+
+            assertSameModel(oneHotModel, gatherModel, randomExamples(random, ISSUES_OPTIONS, 100));
+        }
+    }
+
+    @Test
+    void compareTrainingTimeOnDomainSizes() {
+        int[][] domains = {
+                {5, 5, 5, 5},
+                {20, 20, 20, 20, 20, 20, 20, 20},
+                new int[16],
+        };
+        Arrays.fill(domains[2], 100);
+
+        for (int[] issuesOptions : domains) {
+            List<TFUtilityModel.TrainingExample> examples = randomExamples(new Random(3), issuesOptions, 200);
+
+            try (UtilityModel oneHotModel = new TFUtilityModel(issuesOptions);
+                 UtilityModel gatherModel = new TFGatherUtilityModel(issuesOptions, TrainingParameters.DEFAULT)) {
+                // Warm up both sessions
+                oneHotModel.train(examples.subList(0, 16));
+                gatherModel.train(examples.subList(0, 16));
+
+                long start = System.nanoTime();
+                oneHotModel.train(examples);
+                long oneHotTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                gatherModel.train(examples);
+                long gatherTime = System.nanoTime() - start;
+
+                System.out.println(issuesOptions.length + " issues x " + issuesOptions[0] + " options: one hot "
+                        + oneHotTime / 1_000_000 + " ms, gather " + gatherTime / 1_000_000 + " ms");
+
+                int[] bid = examples.get(0).options;
+                assertEquals(oneHotModel.predict(bid), gatherModel.predict(bid), 1e-4);
+            }
+        }
+    }
+}
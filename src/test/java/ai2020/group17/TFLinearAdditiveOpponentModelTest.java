@@ -0,0 +1,59 @@
+package ai2020.group17;
+
+import geniusweb.actions.Offer;
+import geniusweb.actions.PartyId;
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.DiscreteValue;
+import geniusweb.issuevalue.DiscreteValueSet;
+import geniusweb.issuevalue.Domain;
+import geniusweb.issuevalue.Value;
+import geniusweb.issuevalue.ValueSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TFLinearAdditiveOpponentModelTest {
+
+    private static final PartyId OTHER = new PartyId("other");
+
+    private final Domain domain = new Domain("party", Map.<String, ValueSet>of(
+            "Menu", new DiscreteValueSet(new DiscreteValue("Fish"), new DiscreteValue("Meat")),
+            "Cost", new DiscreteValueSet(new DiscreteValue("2000 EUR"), new DiscreteValue("5000 EUR"), new DiscreteValue("9000 EUR"))));
+
+    private final Bid bid = new Bid(Map.<String, Value>of("Menu", new DiscreteValue("Fish"), "Cost", new DiscreteValue("2000 EUR")));
+
+    @Test
+    void snapshotIsUpdatedOnlyByTraining() {
+        TFLinearAdditiveOpponentModel model = new TFLinearAdditiveOpponentModel(domain);
+
+        assertEquals(0, model.getVersion());
+        UtilityTable snapshot = model.getSnapshot();
+
+        // Reading from the model does not take a new snapshot
+        model.getUtility(bid);
+        model.getWeights();
+        assertSame(snapshot, model.getSnapshot());
+
+        TFLinearAdditiveOpponentModel trained = model.with(new Offer(OTHER, bid), null);
+
+        assertEquals(1, trained.getVersion());
+        assertEquals(snapshot.getIssueCount(), trained.getSnapshot().getIssueCount());
+    }
+
+    @Test
+    void utilityMatchesWeightsAndUtilities() {
+        TFLinearAdditiveOpponentModel model = new TFLinearAdditiveOpponentModel(domain).with(new Offer(OTHER, bid), null);
+
+        double expected = 0;
+        for (String issue : bid.getIssues()) {
+            expected += model.getWeight(issue).doubleValue()
+                    * model.getUtilities().get(issue).getUtility(bid.getValue(issue)).doubleValue();
+        }
+
+        assertEquals(expected, model.getUtility(bid).doubleValue(), 1e-9);
+        assertEquals(expected, model.getSnapshot().getUtility(model.getMapper().convertOptions(bid.getIssueValues())), 1e-9);
+    }
+}
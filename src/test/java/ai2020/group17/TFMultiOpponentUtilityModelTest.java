@@ -0,0 +1,158 @@
+package ai2020.group17;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static ai2020.group17.TFGatherUtilityModelTest.randomExamples;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TFMultiOpponentUtilityModelTest {
+
+    private static final int[] ISSUES_OPTIONS = {3, 4, 2};
+
+    @Test
+    void sharedGraphMatchesSeparateModels() {
+        TrainingParameters parameters = TrainingParameters.DEFAULT.withMode(TrainingParameters.TrainingMode.MINI_BATCH)
+                .withBatchSize(4);
+        Random random = new Random(3);
+
+        // Start with a capacity of 2, so the graph has to grow for 5 opponents
+        try (TFMultiOpponentUtilityModel shared = new TFMultiOpponentUtilityModel(ISSUES_OPTIONS, 2, parameters)) {
+            List<UtilityModel> slots = new ArrayList<>();
+            List<UtilityModel> separate = new ArrayList<>();
+
+            Map<Integer, List<TFUtilityModel.TrainingExample>> examples = new HashMap<>();
+
+            for (int i = 0; i < 5; i++) {
+                TFMultiOpponentUtilityModel.Slot slot = shared.addOpponent();
+                slots.add(slot);
+                separate.add(new TFUtilityModel(ISSUES_OPTIONS, parameters));
+
+                // Train the first opponents before the graph grows
+                List<TFUtilityModel.TrainingExample> first = randomExamples(random, ISSUES_OPTIONS, 6);
+                slot.train(first);
+                separate.get(i).train(first);
+
+                examples.put(slot.getSlot(), randomExamples(random, ISSUES_OPTIONS, 5 + 3 * i));
+            }
+
+            assertEquals(8, shared.getCapacity());
+
+            // Train all opponents in the same runs
+            shared.trainAll(examples);
+            for (int i = 0; i < 5; i++) {
+                separate.get(i).train(examples.get(i));
+            }
+
+            UtilityTable[] tables = shared.computeAll();
+
+            for (int i = 0; i < 5; i++) {
+                UtilityTable expected = separate.get(i).computeSnapshot();
+
+                assertArrayEquals(expected.weights, tables[i].weights, 1e-5);
+                for (int j = 0; j < ISSUES_OPTIONS.length; j++) {
+                    assertArrayEquals(expected.utilities[j], tables[i].utilities[j], 1e-5);
+                }
+
+                int[] bid = {i % 3, i % 4, i % 2};
+                assertEquals(separate.get(i).predict(bid), slots.get(i).predict(bid), 1e-5);
+
+                separate.get(i).close();
+            }
+        }
+    }
+
+    @Test
+    void perExampleMatchesSeparateModels() {
+        TrainingParameters parameters = TrainingParameters.DEFAULT.withMode(TrainingParameters.TrainingMode.PER_EXAMPLE);
+        Random random = new Random(5);
+
+        try (TFMultiOpponentUtilityModel shared = new TFMultiOpponentUtilityModel(ISSUES_OPTIONS, 4, parameters)) {
+            List<UtilityModel> separate = new ArrayList<>();
+            Map<Integer, List<TFUtilityModel.TrainingExample>> examples = new HashMap<>();
+
+            for (int i = 0; i < 3; i++) {
+                TFMultiOpponentUtilityModel.Slot slot = shared.addOpponent();
+                separate.add(new TFUtilityModel(ISSUES_OPTIONS, parameters));
+                examples.put(slot.getSlot(), randomExamples(random, ISSUES_OPTIONS, 2 + 2 * i));
+            }
+
+            shared.trainAll(examples);
+
+            for (int i = 0; i < 3; i++) {
+                separate.get(i).train(examples.get(i));
+
+                UtilityTable expected = separate.get(i).computeSnapshot();
+                UtilityTable actual = shared.compute(i);
+
+                assertArrayEquals(expected.weights, actual.weights, 1e-5);
+                for (int j = 0; j < ISSUES_OPTIONS.length; j++) {
+                    assertArrayEquals(expected.utilities[j], actual.utilities[j], 1e-5);
+                }
+
+                separate.get(i).close();
+            }
+        }
+    }
+
+    @Test
+    void earlyStoppingMatchesSeparateModels() {
+        // Enough epochs that the slots converge after different numbers of epochs
+        TrainingParameters parameters = TrainingParameters.DEFAULT.withMode(TrainingParameters.TrainingMode.MINI_BATCH)
+                .withBatchSize(4).withMaxEpochs(200).withEarlyStopping(0.01, 0);
+        Random random = new Random(11);
+
+        try (TFMultiOpponentUtilityModel shared = new TFMultiOpponentUtilityModel(ISSUES_OPTIONS, 4, parameters)) {
+            Map<Integer, List<TFUtilityModel.TrainingExample>> examples = new HashMap<>();
+            for (int i = 0; i < 4; i++) {
+                examples.put(shared.addOpponent().getSlot(), randomExamples(random, ISSUES_OPTIONS, 3 + 4 * i));
+            }
+
+            shared.trainAll(examples);
+
+            for (int i = 0; i < 4; i++) {
+                try (TFUtilityModel separate = new TFUtilityModel(ISSUES_OPTIONS, parameters)) {
+                    separate.train(examples.get(i));
+
+                    UtilityTable expected = separate.computeSnapshot();
+                    UtilityTable actual = shared.compute(i);
+
+                    assertArrayEquals(expected.weights, actual.weights, 1e-5);
+                    for (int j = 0; j < ISSUES_OPTIONS.length; j++) {
+                        assertArrayEquals(expected.utilities[j], actual.utilities[j], 1e-5);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void predictionsDoNotDependOnEarlierFeeds() {
+        Random random = new Random(7);
+
+        try (TFMultiOpponentUtilityModel shared = new TFMultiOpponentUtilityModel(ISSUES_OPTIONS, 2, TrainingParameters.DEFAULT)) {
+            Map<Integer, List<TFUtilityModel.TrainingExample>> examples = new HashMap<>();
+            for (int i = 0; i < 2; i++) {
+                examples.put(shared.addOpponent().getSlot(), randomExamples(random, ISSUES_OPTIONS, 4 + 3 * i));
+            }
+
+            shared.trainAll(examples);
+
+            List<Integer> slots = List.of(0, 1);
+            List<int[]> bids = List.of(new int[]{2, 3, 1}, new int[]{1, 0, 0});
+            float[] predictions = shared.predictAll(slots, bids);
+
+            // Reuse the buffers of the same size with other rows, and a buffer of another size
+            shared.predictAll(List.of(1, 0), List.of(new int[]{0, 0, 0}, new int[]{1, 1, 1}));
+            shared.predictAll(List.of(0), List.of(new int[]{0, 1, 0}));
+
+            assertArrayEquals(predictions, shared.predictAll(slots, bids));
+        }
+    }
+}
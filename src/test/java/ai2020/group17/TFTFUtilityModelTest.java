@@ -2,8 +2,13 @@ package ai2020.group17;
 
 import ai2020.group17.TFUtilityModel;
 import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.tensorflow.Graph;
+import org.tensorflow.Operation;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 
@@ -119,6 +124,104 @@ class TFTFUtilityModelTest {
         assertTrue(avg <= 0.2);
     }
 
+    @RepeatedTest(5)
+    // Compares convergence and wall-clock time of the per example and mini-batch training modes
+    void miniBatchTrainingComparableToPerExample() {
+        KnownUtilityValueModel hiddenModel = new KnownUtilityValueModel(2, 10);
+
+        List<TFUtilityModel.TrainingExample> examples = hiddenModel.generateExamples(200);
+        List<TFUtilityModel.TrainingExample> testSet = hiddenModel.generateExamples(1000);
+
+        try (TFUtilityModel perExampleModel = new TFUtilityModel(hiddenModel.issuesOptions,
+                TrainingParameters.DEFAULT.withMode(TrainingParameters.TrainingMode.PER_EXAMPLE));
+             TFUtilityModel miniBatchModel = new TFUtilityModel(hiddenModel.issuesOptions,
+                     TrainingParameters.DEFAULT.withMode(TrainingParameters.TrainingMode.MINI_BATCH))) {
+            long start = System.nanoTime();
+            perExampleModel.train(examples);
+            long perExampleTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            miniBatchModel.train(examples);
+            long miniBatchTime = System.nanoTime() - start;
+
+            float perExampleError = averageError(perExampleModel, testSet);
+            float miniBatchError = averageError(miniBatchModel, testSet);
+
+            System.out.println("Per example: " + perExampleTime / 1_000_000 + " ms, average difference " + perExampleError);
+            System.out.println("Mini-batch: " + miniBatchTime / 1_000_000 + " ms, average difference " + miniBatchError);
+
+            assertTrue(miniBatchError <= perExampleError + 0.05);
+        }
+    }
+
+    @Test
+    void batchedPredictionsMatchSinglePredictions() {
+        KnownUtilityValueModel hiddenModel = new KnownUtilityValueModel(4, 6);
+        List<TFUtilityModel.TrainingExample> examples = hiddenModel.generateExamples(50);
+
+        int[][] bids = new int[examples.size()][];
+        for (int i = 0; i < bids.length; i++) {
+            bids[i] = examples.get(i).options;
+        }
+
+        for (TrainingParameters.Backend backend : TrainingParameters.Backend.values()) {
+            try (UtilityModel model = TrainingParameters.DEFAULT.withBackend(backend)
+                    .createUtilityModel(hiddenModel.issuesOptions)) {
+                model.train(examples);
+
+                // Chunks that don't divide the number of bids, and a single chunk
+                for (int chunkSize : new int[]{1, 16, 1000}) {
+                    float[] predictions = new float[bids.length];
+                    model.predictBatch(bids, predictions, chunkSize);
+
+                    for (int i = 0; i < bids.length; i++) {
+                        assertEquals(model.predict(bids[i]), predictions[i], 1e-6, backend + ", chunks of " + chunkSize);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void graphSizeIsConstantOverASession() {
+        KnownUtilityValueModel hiddenModel = new KnownUtilityValueModel(3, 4);
+
+        try (TFUtilityModel model = new TFUtilityModel(hiddenModel.issuesOptions)) {
+            int operations = countOperations(model.graph);
+
+            // A round of a session: train on a new example and read the model
+            for (int round = 0; round < 1000; round++) {
+                model.train(Collections.singletonList(hiddenModel.randomExample()));
+
+                model.computeSnapshot();
+                model.computeWeights();
+                model.computeIssueWeights(round % hiddenModel.issuesOptions.length);
+            }
+
+            assertEquals(operations, countOperations(model.graph));
+        }
+    }
+
+    private static int countOperations(Graph graph) {
+        int count = 0;
+
+        for (Iterator<Operation> operations = graph.operations(); operations.hasNext(); operations.next()) {
+            count++;
+        }
+
+        return count;
+    }
+
+    private static float averageError(TFUtilityModel model, List<TFUtilityModel.TrainingExample> testSet) {
+        float sum = 0;
+
+        for (TFUtilityModel.TrainingExample example : testSet) {
+            sum += Math.abs(model.predict(example.options) - example.actualValue);
+        }
+
+        return sum / testSet.size();
+    }
+
     // A class to generate training samples with known preference paramaters
     private class KnownUtilityValueModel {
 
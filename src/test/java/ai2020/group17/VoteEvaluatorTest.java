@@ -0,0 +1,73 @@
+package ai2020.group17;
+
+import geniusweb.issuevalue.Bid;
+import geniusweb.issuevalue.DiscreteValue;
+import geniusweb.issuevalue.Value;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static ai2020.group17.PrimitiveBidGeneratorTest.domain;
+import static ai2020.group17.PrimitiveBidGeneratorTest.myProfile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class VoteEvaluatorTest {
+
+    private final UtilityOfferStringToIntOptionsMapper mapper = UtilityOfferStringToIntOptionsMapper.forDomain(domain);
+
+    private List<Bid> allBids() {
+        List<Bid> bids = new ArrayList<>();
+
+        for (String menu : new String[]{"Fish", "Meat"}) {
+            for (String cost : new String[]{"2000 EUR", "5000 EUR", "9000 EUR"}) {
+                for (String music : new String[]{"Band", "DJ", "None"}) {
+                    bids.add(new Bid(Map.<String, Value>of("Menu", new DiscreteValue(menu),
+                            "Cost", new DiscreteValue(cost), "Music", new DiscreteValue(music))));
+                }
+            }
+        }
+
+        return bids;
+    }
+
+    @Test
+    void matchesProfileUtility() {
+        VoteEvaluator evaluator = new VoteEvaluator(UtilityTable.of(myProfile, mapper), mapper, false);
+
+        for (Bid bid : allBids()) {
+            assertEquals(myProfile.getUtility(bid).doubleValue(), evaluator.getUtility(bid), 1e-9);
+
+            // Cached
+            assertEquals(myProfile.getUtility(bid).doubleValue(), evaluator.getUtility(bid), 1e-9);
+        }
+
+        // Partial bids and unknown values
+        Bid partial = new Bid(Map.<String, Value>of("Menu", new DiscreteValue("Fish"), "Cost", new DiscreteValue("1 EUR")));
+        assertEquals(0.2, evaluator.getUtility(partial), 1e-9);
+        assertEquals(0.2, evaluator.getUtility(new Bid("Menu", new DiscreteValue("Fish"))), 1e-9);
+
+        assertFalse(evaluator.isGood(null, 0));
+    }
+
+    @Test
+    void parallelFilterMatchesSequential() {
+        List<Bid> bids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            bids.addAll(allBids());
+        }
+
+        VoteEvaluator sequential = new VoteEvaluator(UtilityTable.of(myProfile, mapper), mapper, false);
+        VoteEvaluator parallel = new VoteEvaluator(UtilityTable.of(myProfile, mapper), mapper, true);
+
+        List<Bid> expected = bids.stream()
+                .filter(bid -> myProfile.getUtility(bid).doubleValue() >= 0.6)
+                .collect(Collectors.toList());
+
+        assertEquals(expected, sequential.filterGood(bids, 0.6));
+        assertEquals(expected, parallel.filterGood(bids, 0.6));
+    }
+}
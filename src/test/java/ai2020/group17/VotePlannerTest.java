@@ -0,0 +1,59 @@
+package ai2020.group17;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VotePlannerTest {
+
+    // A good bid accepted by opponent 0, and a worse bid accepted by both opponents
+    private static final double[] MY_UTILITIES = {1.0, 0.5};
+    private static final double[][] ACCEPTANCE = {{1.0, 0.0}, {1.0, 1.0}};
+    private static final int[] OPPONENT_POWERS = {1, 1};
+
+    @Test
+    void restrictsVotesThatWouldOutvoteBetterBids() {
+        VotePlanner planner = new VotePlanner(2, Integer.MAX_VALUE, 1, new Sampler(1));
+
+        VotePlanner.Plan plan = planner.plan(MY_UTILITIES, ACCEPTANCE, OPPONENT_POWERS, 1000);
+
+        // By not joining the coalition of 3 on the worse bid, the coalition of 2 on the good bid can win
+        assertEquals(1.0, plan.getExpectedUtility(), 1e-9);
+        assertEquals(2, plan.getMaxPower(1));
+    }
+
+    @Test
+    void zeroBudgetKeepsWidestRange() {
+        VotePlanner planner = new VotePlanner(2, Integer.MAX_VALUE, 1, new Sampler(2));
+
+        VotePlanner.Plan plan = planner.plan(MY_UTILITIES, ACCEPTANCE, OPPONENT_POWERS, 0);
+
+        for (int b = 0; b < MY_UTILITIES.length; b++) {
+            assertEquals(2, plan.getMinPower(b));
+            assertEquals(Integer.MAX_VALUE, plan.getMaxPower(b));
+        }
+
+        assertEquals(0.5, plan.getExpectedUtility(), 1e-9);
+    }
+
+    @Test
+    void zeroBudgetSamplesFewerOutcomes() {
+        // Counts the sampled acceptances
+        long[] draws = new long[1];
+        Sampler sampler = new Sampler(3) {
+            @Override
+            public double nextDouble() {
+                draws[0]++;
+                return super.nextDouble();
+            }
+        };
+
+        VotePlanner planner = new VotePlanner(2, Integer.MAX_VALUE, 1, sampler);
+
+        VotePlanner.Plan plan = planner.plan(MY_UTILITIES, ACCEPTANCE, OPPONENT_POWERS, 0);
+
+        // The deadline has passed after the first sample
+        assertEquals(MY_UTILITIES.length * OPPONENT_POWERS.length, draws[0]);
+        assertEquals(0.5, plan.getExpectedUtility(), 1e-9);
+    }
+}